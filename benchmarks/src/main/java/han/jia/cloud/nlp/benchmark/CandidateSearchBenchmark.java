@@ -0,0 +1,39 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the candidate searches behind {@code toStemSuffix} and
+ * {@code toPrefixStem}: finding the endings and the prefixes a word may be
+ * split at.
+ *
+ * @author Jiayun Han
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CandidateSearchBenchmark {
+
+	@Benchmark
+	public List<String> findEndings(DictionaryState state, Cursor cursor) {
+		return state.dictionary.getSuffixTrie().findEndings(cursor.next(state.words));
+	}
+
+	@Benchmark
+	public List<String> findPrefixes(DictionaryState state, Cursor cursor) {
+		String word = cursor.next(state.words);
+		return state.dictionary.getPrefixTrie().findPrefixes(word, word.indexOf('-') >= 0 ? 1 : 0);
+	}
+}
@@ -0,0 +1,23 @@
+package han.jia.cloud.nlp.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A per-thread position in a word mix, so that each invocation of a benchmark
+ * handles the next word instead of the same one over and over.
+ *
+ * @author Jiayun Han
+ *
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+	private int index;
+
+	public <T> T next(T[] mix) {
+		T item = mix[index];
+		index = (index + 1) % mix.length;
+		return item;
+	}
+}
@@ -0,0 +1,63 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+import han.jia.cloud.nlp.util.Dictionary;
+
+/**
+ * The dictionary built from the shipped dump file, with the word mixes drawn
+ * from its {@code word} and {@code inflected} tables. It is built once per
+ * fork and shared by all benchmark threads.
+ *
+ * <p>
+ * The dump file is {@code dbdump/nlp.sql} under the working directory, unless
+ * the {@code ema.dump} system property says otherwise.
+ *
+ * @author Jiayun Han
+ *
+ */
+@State(Scope.Benchmark)
+public class DictionaryState {
+
+	/**
+	 * The number of words in each mix
+	 */
+	public static final int MIX_SIZE = 1 << 14;
+
+	public Dictionary dictionary;
+
+	// base words and inflected forms together, as in running text
+	public String[] words;
+
+	// inflected forms only
+	public String[] inflected;
+
+	@Setup
+	public void setUp() throws IOException {
+
+		String dump = System.getProperty("ema.dump", "dbdump/nlp.sql");
+		dictionary = Singleton.INSTANCE.getDictionary(new SqlDumpWordService(Paths.get(dump)));
+
+		Set<String> vocabulary = new LinkedHashSet<>(dictionary.getWords());
+		List<String> inflectedForms = new ArrayList<>();
+		for (Inflected entry : dictionary.getInflectionTable().values()) {
+			inflectedForms.add(entry.getName());
+		}
+		vocabulary.addAll(inflectedForms);
+
+		words = WordMix.zipf(vocabulary, MIX_SIZE, 1.0);
+		inflected = WordMix.zipf(inflectedForms, MIX_SIZE, 1.0);
+	}
+}
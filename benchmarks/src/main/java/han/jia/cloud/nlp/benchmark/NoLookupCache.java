@@ -0,0 +1,44 @@
+package han.jia.cloud.nlp.benchmark;
+
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.LookupCache;
+
+/**
+ * A cache that never holds anything, to measure the parser with every lookup
+ * missing.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class NoLookupCache<K, V> implements LookupCache<K, V> {
+
+	public static final LookupCache.Factory FACTORY = new LookupCache.Factory() {
+		@Override
+		public <K, V> LookupCache<K, V> newCache(String name) {
+			return new NoLookupCache<K, V>();
+		}
+	};
+
+	@Override
+	public V get(K key) {
+		return null;
+	}
+
+	@Override
+	public void put(K key, V value) {
+	}
+
+	@Override
+	public void clear() {
+	}
+
+	@Override
+	public long size() {
+		return 0;
+	}
+
+	@Override
+	public CacheStats stats() {
+		return new CacheStats(0, 0, 0, 0);
+	}
+}
@@ -0,0 +1,77 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import han.jia.cloud.nlp.ema.InflectionEndingTrie;
+import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.ema.MorphParser;
+
+/**
+ * Measures {@code MorphParser.parse}, one word of a mix per invocation.
+ *
+ * <p>
+ * The cold benchmarks use a parser whose caches never hold anything, so every
+ * word goes through the whole analysis; the warm one uses a parser with the
+ * default caches, which have already seen the whole mix. The inflected mix
+ * mostly exercises the de-inflection paths of the parser; classifying it
+ * measures alone the ending lookup those paths start with.
+ *
+ * @author Jiayun Han
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	private MorphParser coldParser;
+	private MorphParser warmParser;
+	private InflectionEndingTrie endings;
+	private final int[] cuts = new int[InflectionEndingTrie.CATEGORIES];
+
+	@Setup
+	public void setUp(DictionaryState state) {
+		coldParser = new MorphParser(state.dictionary, NoLookupCache.FACTORY);
+
+		endings = state.dictionary.getInflectionEndingTrie();
+
+		warmParser = new MorphParser(state.dictionary);
+		for (String word : state.words) {
+			warmParser.parse(word);
+		}
+	}
+
+	@Benchmark
+	public MorphNode parseCold(DictionaryState state, Cursor cursor) {
+		return coldParser.parse(cursor.next(state.words));
+	}
+
+	@Benchmark
+	public MorphNode parseWarm(DictionaryState state, Cursor cursor) {
+		return warmParser.parse(cursor.next(state.words));
+	}
+
+	@Benchmark
+	public MorphNode parseInflectedCold(DictionaryState state, Cursor cursor) {
+		return coldParser.parse(cursor.next(state.inflected));
+	}
+
+	@Benchmark
+	public int classifyInflected(DictionaryState state, Cursor cursor) {
+		return endings.classify(cursor.next(state.inflected), cuts);
+	}
+}
@@ -0,0 +1,60 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import han.jia.cloud.nlp.util.StringUtil;
+
+/**
+ * Measures the {@code StringUtil} helpers the parser calls on every word.
+ *
+ * @author Jiayun Han
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringUtilBenchmark {
+
+	// the words cutWhenEndsWithErEdEstIng expects
+	private String[] erEdEstIngWords;
+
+	@Setup
+	public void setUp(DictionaryState state) {
+		erEdEstIngWords = WordMix.filter(state.words, w -> w.length() > 4 && (w.endsWith("er")
+				|| w.endsWith("ed") || w.endsWith("est") || w.endsWith("ing")));
+	}
+
+	@Benchmark
+	public String[] cutWhenEndsWithErEdEstIng(DictionaryState state, Cursor cursor) {
+		return StringUtil.cutWhenEndsWithErEdEstIng(cursor.next(erEdEstIngWords), state.dictionary::isWord);
+	}
+
+	@Benchmark
+	public String[] crudeRootSuffix(DictionaryState state, Cursor cursor) {
+		return StringUtil.crudeRootSuffix(cursor.next(state.words), state.dictionary.getEdErEstIng());
+	}
+
+	@Benchmark
+	public int endWithListElement(DictionaryState state, Cursor cursor) {
+		return StringUtil.endWithListElement(cursor.next(state.words), state.dictionary.getStrongSuffixes());
+	}
+
+	@Benchmark
+	public String[] splitFromRight(DictionaryState state, Cursor cursor) {
+		return StringUtil.splitFromRight(cursor.next(state.words), 2);
+	}
+}
@@ -0,0 +1,48 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.ema.MorphParser;
+
+/**
+ * Measures {@code MorphNode.validate} on the trees of a word mix.
+ *
+ * @author Jiayun Han
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidateBenchmark {
+
+	private MorphNode[] nodes;
+
+	@Setup
+	public void setUp(DictionaryState state) {
+		MorphParser parser = new MorphParser(state.dictionary);
+		nodes = new MorphNode[state.words.length];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = parser.parse(state.words[i]);
+		}
+	}
+
+	@Benchmark
+	public int validate(DictionaryState state, Cursor cursor) {
+		return cursor.next(nodes).validate(state.dictionary);
+	}
+}
@@ -0,0 +1,80 @@
+package han.jia.cloud.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Draws benchmark inputs out of a vocabulary so that they follow a Zipf
+ * distribution, the way word frequencies in running text do: a few words come
+ * up very often while most of them are rare.
+ *
+ * <p>
+ * The vocabulary is shuffled before the ranks are assigned, and both the
+ * shuffle and the draws use a fixed seed, so every run measures exactly the
+ * same sequence of words.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class WordMix {
+
+	/**
+	 * The seed of all the mixes, fixed for reproducible runs
+	 */
+	public static final long SEED = 20161018L;
+
+	private WordMix() {
+	}
+
+	/**
+	 * Draws a mix of words
+	 *
+	 * @param vocabulary
+	 *            The words to draw from
+	 * @param size
+	 *            The number of words to draw
+	 * @param exponent
+	 *            The exponent of the Zipf distribution, around 1 for English
+	 *            text
+	 * @return The words drawn, most of them repeated
+	 */
+	public static String[] zipf(Collection<String> vocabulary, int size, double exponent) {
+
+		List<String> ranked = new ArrayList<>(vocabulary);
+		Collections.sort(ranked);
+		Random random = new Random(SEED);
+		Collections.shuffle(ranked, random);
+
+		double[] cumulative = new double[ranked.size()];
+		double total = 0;
+		for (int rank = 0; rank < cumulative.length; rank++) {
+			total += 1.0 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = total;
+		}
+
+		String[] mix = new String[size];
+		for (int i = 0; i < size; i++) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			mix[i] = ranked.get(rank < 0 ? -rank - 1 : rank);
+		}
+		return mix;
+	}
+
+	/**
+	 * Keeps the words of a mix that pass a filter
+	 *
+	 * @param mix
+	 *            The mix to filter
+	 * @param filter
+	 *            The filter
+	 * @return The words kept, in their order in the mix
+	 */
+	public static String[] filter(String[] mix, Predicate<String> filter) {
+		return Arrays.stream(mix).filter(filter).toArray(String[]::new);
+	}
+}
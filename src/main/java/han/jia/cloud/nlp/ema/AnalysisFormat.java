@@ -0,0 +1,105 @@
+package han.jia.cloud.nlp.ema;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The line formats of the analyses written by the analysis server and the
+ * batch analyzer, one line per word.
+ *
+ * @author Jiayun Han
+ *
+ */
+public enum AnalysisFormat {
+
+	/**
+	 * The word, a tab and its morphemes as {@code text/Type} separated by
+	 * spaces, e.g. {@code unhappiness	un/Prefix hap/Root y/Suffix iness/Suffix}
+	 */
+	TSV("text/tab-separated-values; charset=utf-8") {
+		@Override
+		public void append(StringBuilder sb, String word, MorphNode node) {
+			sb.append(word).append('\t');
+			int length = sb.length();
+			node.forEachMorpheme(morpheme -> {
+				if (sb.length() > length) {
+					sb.append(' ');
+				}
+				sb.append(morpheme.getText()).append('/').append(morpheme.getType());
+			});
+			sb.append('\n');
+		}
+	},
+
+	/**
+	 * The word, a tab and its structure in bracketed notation, e.g.
+	 * {@code unhappiness	((un+(hap+y))+iness)}
+	 * 
+	 * @see MorphNodeFormat#BRACKETED
+	 */
+	BRACKETED("text/tab-separated-values; charset=utf-8") {
+		@Override
+		public void append(StringBuilder sb, String word, MorphNode node) {
+			sb.append(word).append('\t');
+			MorphNodeFormat.BRACKETED.append(node, sb);
+			sb.append('\n');
+		}
+	},
+
+	/**
+	 * A JSON object per line, e.g.
+	 * {@code {"word":"cities","morphemes":[{"text":"cite","type":"Root"},...]}}
+	 */
+	JSONL("application/x-ndjson; charset=utf-8") {
+		@Override
+		public void append(StringBuilder sb, String word, MorphNode node) {
+			sb.append("{\"word\":");
+			appendJsonString(sb, word);
+			sb.append(",\"morphemes\":[");
+			int length = sb.length();
+			node.forEachMorpheme(morpheme -> {
+				if (sb.length() > length) {
+					sb.append(',');
+				}
+				sb.append("{\"text\":");
+				appendJsonString(sb, morpheme.getText());
+				sb.append(",\"type\":\"").append(morpheme.getType()).append("\"}");
+			});
+			sb.append("]}\n");
+		}
+	};
+
+	private final String contentType;
+
+	private AnalysisFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/**
+	 * @return The media type of a document of lines of this format
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Appends the line of the analysis of a word, including its line feed
+	 *
+	 * @param sb
+	 *            The builder to append to
+	 * @param word
+	 *            The word as it was given
+	 * @param node
+	 *            The analysis of the word
+	 */
+	public abstract void append(StringBuilder sb, String word, MorphNode node);
+
+	static void appendJsonString(StringBuilder sb, String s) {
+		try {
+			MorphNodeFormat.writeJsonString(sb, s);
+		} catch (IOException e) {
+			// a StringBuilder does not throw it
+			throw new UncheckedIOException(e);
+		}
+	}
+}
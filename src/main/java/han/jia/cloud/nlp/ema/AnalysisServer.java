@@ -0,0 +1,515 @@
+package han.jia.cloud.nlp.ema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.SpringAppContextCreator;
+
+/**
+ * A local HTTP server sharing one warm parser among the processes of a host,
+ * so that they do not each pay for the dictionary and its caches.
+ *
+ * <p>
+ * A client posts a batch of words, separated by white space, to
+ * {@code /analyze} and gets back one line per word, in the order of the
+ * words: by default the word, a tab and its morphemes as {@code text/Type}
+ * separated by spaces, e.g.
+ *
+ * <pre>
+ * unhappiness	un/Prefix hap/Root y/Suffix iness/Suffix
+ * </pre>
+ *
+ * its structure in bracketed notation with {@code /analyze?format=bracketed},
+ * or a JSON object with {@code /analyze?format=jsonl}.
+ *
+ * <p>
+ * The requests are queued and handled by a single batcher, which coalesces
+ * the requests arriving within a short delay into one micro-batch parsed by
+ * {@link MorphParser#parseAll(java.util.Collection, ForkJoinPool)}, so a word
+ * asked for by several clients at once is parsed once. When the queue is
+ * full, a request is turned down at once with {@code 503 Service
+ * Unavailable} rather than left waiting, and so is a request whose batch takes
+ * longer than {@link #MAX_WAIT_MILLIS}. A word whose analysis fails comes
+ * back as itself, of type {@code Word}, without failing the other words of
+ * its batch. The connections are handled by a bounded pool of threads; when
+ * its threads and its queue are all taken, a new connection is closed at
+ * once. {@code GET /stats} reports the counters of the server and the caches
+ * of the parser.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class AnalysisServer {
+
+	private final static Logger logger = LoggerFactory.getLogger(AnalysisServer.class);
+
+	/**
+	 * The default maximum number of requests waiting for a batch
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * The default number of words above which a batch is closed at once
+	 */
+	public static final int DEFAULT_MAX_BATCH_WORDS = 4096;
+
+	/**
+	 * The default time a batch waits for more requests, in microseconds
+	 */
+	public static final long DEFAULT_MAX_DELAY_MICROS = 2000;
+
+	/**
+	 * The maximum number of words of a single request
+	 */
+	public static final int MAX_REQUEST_WORDS = 65536;
+
+	/**
+	 * The maximum size of the body of a single request, in bytes
+	 */
+	public static final int MAX_REQUEST_BYTES = 1 << 20;
+
+	/**
+	 * The longest time a request waits for its batch, in milliseconds
+	 */
+	public static final long MAX_WAIT_MILLIS = 10000;
+
+	/**
+	 * The number of threads handling the connections
+	 */
+	public static final int HANDLER_THREADS = 64;
+
+	private static final String TEXT = "text/plain; charset=utf-8";
+
+	private final MorphParser parser;
+	private final HttpServer server;
+	private final BlockingQueue<Request> queue;
+	private final int maxBatchWords;
+	private final long maxDelayNanos;
+
+	private final ExecutorService handlers;
+	private final Thread batcher;
+	private final ForkJoinPool pool;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong words = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	private volatile boolean running;
+
+	/**
+	 * Creates a server with the default queue capacity and batching
+	 *
+	 * @param parser
+	 *            The parser shared by all the clients
+	 * @param address
+	 *            The address to listen on, e.g. the loopback address
+	 * @throws IOException
+	 *             If the address cannot be bound
+	 */
+	public AnalysisServer(MorphParser parser, InetSocketAddress address) throws IOException {
+		this(parser, address, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_WORDS, DEFAULT_MAX_DELAY_MICROS);
+	}
+
+	/**
+	 * Creates a server
+	 *
+	 * @param parser
+	 *            The parser shared by all the clients
+	 * @param address
+	 *            The address to listen on, e.g. the loopback address
+	 * @param queueCapacity
+	 *            The maximum number of requests waiting for a batch, beyond
+	 *            which requests are turned down
+	 * @param maxBatchWords
+	 *            The number of words above which a batch is closed at once
+	 * @param maxDelayMicros
+	 *            The time a batch waits for more requests, in microseconds
+	 * @throws IOException
+	 *             If the address cannot be bound
+	 */
+	public AnalysisServer(MorphParser parser, InetSocketAddress address, int queueCapacity, int maxBatchWords,
+			long maxDelayMicros) throws IOException {
+
+		this.parser = parser;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.maxBatchWords = maxBatchWords;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+
+		// the handlers mostly wait for their batch, so there are more of them
+		// than cores, but only so many, and as many connections wait for them
+		// as requests wait for a batch
+		AtomicInteger threads = new AtomicInteger();
+		ThreadPoolExecutor handlers = new ThreadPoolExecutor(HANDLER_THREADS, HANDLER_THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "analysis-handler-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, (runnable, executor) -> {
+					rejected.incrementAndGet();
+					throw new RejectedExecutionException("All the handlers are busy");
+				});
+		handlers.allowCoreThreadTimeOut(true);
+		this.handlers = handlers;
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		this.batcher = new Thread(this::batch, "analysis-batcher");
+		this.batcher.setDaemon(true);
+
+		this.server = HttpServer.create(address, queueCapacity);
+		this.server.setExecutor(handlers);
+		this.server.createContext("/analyze", this::analyze);
+		this.server.createContext("/stats", this::stats);
+	}
+
+	/**
+	 * Builds the dictionary through the Spring context, or out of the dump file
+	 * if one is given, and serves it on the loopback address until the JVM
+	 * exits
+	 *
+	 * @param args
+	 *            The port, optionally followed by the path of the nlp.sql dump
+	 *            file
+	 * @throws IOException
+	 *             If the context cannot be loaded, the dump file read or the
+	 *             port bound
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1 && args.length != 2) {
+			System.err.println("Usage: AnalysisServer <port> [<nlp.sql>]");
+			System.exit(1);
+		}
+
+		WordService wordService = args.length == 2 ? new SqlDumpWordService(Paths.get(args[1]))
+				: SpringAppContextCreator.getAppContext().getBean(WordService.class);
+
+		AnalysisServer server = new AnalysisServer(new MorphParser(wordService),
+				new InetSocketAddress("127.0.0.1", Integer.parseInt(args[0])));
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.start();
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		running = true;
+		batcher.start();
+		server.start();
+		logger.info("Analysis server listening on {}", server.getAddress());
+	}
+
+	/**
+	 * Stops accepting requests; the requests still queued are turned down
+	 */
+	public void stop() {
+		running = false;
+		server.stop(0);
+		batcher.interrupt();
+
+		Request request;
+		while ((request = queue.poll()) != null) {
+			request.result.completeExceptionally(new IllegalStateException("The server is stopping"));
+		}
+		handlers.shutdown();
+		pool.shutdown();
+		logger.info("Analysis server stopped");
+	}
+
+	/**
+	 * Returns the address the server listens on
+	 *
+	 * @return The bound address, whose port is the actual one if port 0 was
+	 *         asked for
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void analyze(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				send(exchange, 405, TEXT, "Use POST\n");
+				return;
+			}
+
+			AnalysisFormat format = formatOf(exchange.getRequestURI().getQuery());
+			if (format == null) {
+				send(exchange, 400, TEXT, "Unknown format, use tsv, bracketed or jsonl\n");
+				return;
+			}
+
+			List<String> batch = contentLength(exchange) > MAX_REQUEST_BYTES ? null
+					: readWords(exchange.getRequestBody());
+			if (batch == null) {
+				send(exchange, 413, TEXT,
+						"At most " + MAX_REQUEST_WORDS + " words and " + MAX_REQUEST_BYTES + " bytes per request\n");
+				return;
+			}
+
+			requests.incrementAndGet();
+			if (batch.isEmpty()) {
+				send(exchange, 200, format.getContentType(), "");
+				return;
+			}
+
+			Request request = new Request(batch);
+			if (!running || !queue.offer(request)) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, TEXT, "Too busy\n");
+				return;
+			}
+
+			List<MorphNode> nodes;
+			try {
+				nodes = request.result.get(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// the batcher skips the requests already given up
+				request.result.cancel(false);
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, TEXT, "Timed out\n");
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				send(exchange, 503, TEXT, "Interrupted\n");
+				return;
+			} catch (ExecutionException e) {
+				// logged by the batcher
+				send(exchange, 500, TEXT, String.valueOf(e.getCause()) + "\n");
+				return;
+			}
+
+			StringBuilder sb = new StringBuilder(batch.size() * 32);
+			for (int i = 0; i < batch.size(); i++) {
+				format.append(sb, batch.get(i), nodes.get(i));
+			}
+			send(exchange, 200, format.getContentType(), sb);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void stats(HttpExchange exchange) throws IOException {
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append("requests=").append(requests.get()).append('\n');
+			sb.append("rejected=").append(rejected.get()).append('\n');
+			sb.append("batches=").append(batches.get()).append('\n');
+			sb.append("words=").append(words.get()).append('\n');
+			sb.append("failures=").append(failures.get()).append('\n');
+			sb.append("queued=").append(queue.size()).append('\n');
+			for (Map.Entry<String, CacheStats> entry : parser.getCacheStats().entrySet()) {
+				sb.append(entry.getKey()).append("Cache=").append(entry.getValue()).append('\n');
+			}
+			send(exchange, 200, TEXT, sb);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// the format asked for by the query, e.g. format=jsonl, or null if unknown
+	private static AnalysisFormat formatOf(String query) {
+		if (query == null) {
+			return AnalysisFormat.TSV;
+		}
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith("format=")) {
+				String name = parameter.substring("format=".length()).toUpperCase(Locale.ROOT);
+				for (AnalysisFormat format : AnalysisFormat.values()) {
+					if (format.name().equals(name)) {
+						return format;
+					}
+				}
+				return null;
+			}
+		}
+		return AnalysisFormat.TSV;
+	}
+
+	// the declared length of the body, or -1 if not declared
+	private static long contentLength(HttpExchange exchange) {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		try {
+			return length == null ? -1 : Long.parseLong(length.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// the words of the body, or null if there are too many or too many bytes,
+	// which is found before reading more than the maximum
+	private static List<String> readWords(InputStream body) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = body.read(buffer)) > 0) {
+			if (bytes.size() + read > MAX_REQUEST_BYTES) {
+				return null;
+			}
+			bytes.write(buffer, 0, read);
+		}
+
+		String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		List<String> words = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean space = i == text.length() || Character.isWhitespace(text.charAt(i));
+			if (space && start >= 0) {
+				if (words.size() == MAX_REQUEST_WORDS) {
+					return null;
+				}
+				words.add(text.substring(start, i));
+				start = -1;
+			} else if (!space && start < 0) {
+				start = i;
+			}
+		}
+		return words;
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, CharSequence body)
+			throws IOException {
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// takes the requests off the queue and parses them in micro-batches
+	private void batch() {
+
+		List<Request> batch = new ArrayList<>();
+		List<String> texts = new ArrayList<>();
+
+		while (running) {
+			try {
+				Request first = queue.take();
+				batch.add(first);
+				int count = first.words.size();
+
+				long deadline = System.nanoTime() + maxDelayNanos;
+				while (count < maxBatchWords) {
+					long wait = deadline - System.nanoTime();
+					Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+					count += next.words.size();
+				}
+			} catch (InterruptedException e) {
+				for (Request request : batch) {
+					request.result.completeExceptionally(new IllegalStateException("The server is stopping"));
+				}
+				return;
+			}
+
+			batch.removeIf(request -> request.result.isDone());
+			if (batch.isEmpty()) {
+				continue;
+			}
+			for (Request request : batch) {
+				texts.addAll(request.words);
+			}
+
+			// a batch failing, even with an error such as a stack overflow on
+			// a pathological word, is parsed again word by word, so that the
+			// word fails alone rather than the requests of every client
+			try {
+				List<MorphNode> nodes = parser.parseAll(texts, pool);
+				int from = 0;
+				for (Request request : batch) {
+					int to = from + request.words.size();
+					request.result.complete(nodes.subList(from, to));
+					from = to;
+				}
+			} catch (Throwable e) {
+				logger.warn("Failed to parse a batch of {} words, parsing them one by one: {}", texts.size(),
+						e.toString());
+				for (Request request : batch) {
+					parseEach(request);
+				}
+			}
+
+			batches.incrementAndGet();
+			words.addAndGet(texts.size());
+			batch.clear();
+			texts.clear();
+		}
+	}
+
+	// parses the words of a request one by one; whatever else than a failed
+	// word goes wrong, e.g. running out of memory, goes to the request alone
+	private void parseEach(Request request) {
+		try {
+			List<MorphNode> nodes = new ArrayList<>(request.words.size());
+			for (String word : request.words) {
+				nodes.add(parseOne(word));
+			}
+			request.result.complete(nodes);
+		} catch (Throwable e) {
+			logger.error("Failed to parse a request of {} words", request.words.size(), e);
+			request.result.completeExceptionally(e);
+		}
+	}
+
+	// the analysis of a word, or the word standing for itself if it fails,
+	// as BatchAnalyzer writes it
+	private MorphNode parseOne(String word) {
+		try {
+			return parser.parse(word);
+		} catch (RuntimeException | StackOverflowError e) {
+			failures.incrementAndGet();
+			logger.warn("Failed to analyze '{}': {}", word, e.toString());
+			return new MorphNode(word, MorphType.Word);
+		}
+	}
+
+	private static final class Request {
+
+		private final List<String> words;
+		private final CompletableFuture<List<MorphNode>> result = new CompletableFuture<>();
+
+		private Request(List<String> words) {
+			this.words = words;
+		}
+	}
+}
@@ -0,0 +1,494 @@
+package han.jia.cloud.nlp.ema;
+
+import java.io.BufferedOutputStream;
+import java.io.CharArrayReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.DictionarySnapshot;
+import han.jia.cloud.nlp.util.MappedDictionary;
+import han.jia.cloud.nlp.util.SegmentedLruCache;
+import han.jia.cloud.nlp.util.SpringAppContextCreator;
+import han.jia.cloud.nlp.util.WordTokenizer;
+
+/**
+ * Analyzes a large file of words or running text on all the cores, writing
+ * one line per word in the order of the input.
+ *
+ * <p>
+ * The file is cut on line boundaries into chunks of about the chunk size,
+ * each of which is mapped into memory, decoded and analyzed by a thread of
+ * its own. A chunk is never more than twice the chunk size: where no line
+ * ends within another chunk size, it is cut after the last white space
+ * instead, and a token longer still is cut in two between its characters. The results of the chunks are written in the order of the chunks,
+ * and only a few chunks are in flight at a time, so the memory needed does
+ * not depend on the size of the file.
+ *
+ * <p>
+ * A word whose analysis fails, e.g. with a stack overflow on a pathological
+ * token, is logged, counted and written as a bare word, so that the output
+ * still has a line per word.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java han.jia.cloud.nlp.ema.BatchAnalyzer [options] &lt;input&gt; [&lt;output&gt;]
+ *
+ *   --format FORMAT         the format of the output lines: tsv, the
+ *                           default, bracketed or jsonl
+ *   --text                  tokenize running text rather than take the
+ *                           white-space separated tokens as they are
+ *   --threads N             the number of threads, one per core by default
+ *   --chunk-size BYTES      the size of the chunks, 4 MiB by default
+ *   --dump nlp.sql          build the dictionary from the dump file,
+ *   --snapshot ema.dict     load it from a snapshot, or
+ *   --image ema.img         map it from an image, instead of the database
+ *   --analyses ema.analyses answer the known words from precomputed analyses
+ * </pre>
+ *
+ * The output goes to the standard output if no output file is given; the
+ * statistics of the run go to the standard error.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class BatchAnalyzer {
+
+	/**
+	 * The default size of the chunks, in bytes
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+	/**
+	 * The maximum size of the chunks, in bytes, so that twice of it can still
+	 * be mapped
+	 */
+	public static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	private static final byte LF = '\n';
+
+	private final static Logger logger = LoggerFactory.getLogger(BatchAnalyzer.class);
+
+	private final MorphParser parser;
+	private final AnalysisFormat format;
+	private final boolean text;
+	private final int threads;
+	private final int chunkSize;
+
+	// the output of a chunk is built in a builder reused by each thread
+	private final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+	/**
+	 * Creates an analyzer
+	 *
+	 * @param parser
+	 *            The parser of the words
+	 * @param format
+	 *            The format of the output lines
+	 * @param text
+	 *            true to tokenize running text and parse the words as
+	 *            {@link MorphParser#parseAsWritten(String)} does; false to take
+	 *            the white-space separated tokens as they are
+	 * @param threads
+	 *            The number of threads analyzing the chunks
+	 * @param chunkSize
+	 *            The size of the chunks, in bytes, at most
+	 *            {@link #MAX_CHUNK_SIZE}
+	 */
+	public BatchAnalyzer(MorphParser parser, AnalysisFormat format, boolean text, int threads, int chunkSize) {
+		if (threads < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException("threads and chunkSize must be positive");
+		}
+		if (chunkSize > MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException("chunkSize must be at most " + MAX_CHUNK_SIZE);
+		}
+		this.parser = parser;
+		this.format = format;
+		this.text = text;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Analyzes the input file with the options described above
+	 *
+	 * @param args
+	 *            The options, the input file and optionally the output file
+	 * @throws Exception
+	 *             If the dictionary cannot be loaded or the files read or
+	 *             written
+	 */
+	public static void main(String[] args) throws Exception {
+
+		AnalysisFormat format = AnalysisFormat.TSV;
+		boolean text = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunkSize = DEFAULT_CHUNK_SIZE;
+		String dump = null, snapshot = null, image = null, analysesFile = null;
+		List<String> files = new ArrayList<>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--format":
+					format = AnalysisFormat.valueOf(args[++i].toUpperCase(Locale.ROOT));
+					break;
+				case "--text":
+					text = true;
+					break;
+				case "--threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "--chunk-size":
+					chunkSize = Integer.parseInt(args[++i]);
+					break;
+				case "--dump":
+					dump = args[++i];
+					break;
+				case "--snapshot":
+					snapshot = args[++i];
+					break;
+				case "--image":
+					image = args[++i];
+					break;
+				case "--analyses":
+					analysesFile = args[++i];
+					break;
+				default:
+					if (args[i].startsWith("--")) {
+						throw new IllegalArgumentException("Unknown option " + args[i]);
+					}
+					files.add(args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			files.clear();
+		}
+
+		if (files.isEmpty() || files.size() > 2) {
+			System.err.println("Usage: BatchAnalyzer [--format tsv|bracketed|jsonl] [--text] [--threads N] "
+					+ "[--chunk-size BYTES] [--dump nlp.sql | --snapshot ema.dict | --image ema.img] "
+					+ "[--analyses ema.analyses] <input> [<output>]");
+			System.exit(1);
+		}
+
+		Dictionary dictionary;
+		if (snapshot != null) {
+			dictionary = DictionarySnapshot.load(Paths.get(snapshot));
+		} else if (image != null) {
+			dictionary = MappedDictionary.open(Paths.get(image));
+		} else {
+			WordService wordService = dump != null ? new SqlDumpWordService(Paths.get(dump))
+					: SpringAppContextCreator.getAppContext().getBean(WordService.class);
+			dictionary = Singleton.INSTANCE.getDictionary(wordService);
+		}
+
+		PrecomputedAnalyses analyses = analysesFile == null ? null
+				: PrecomputedAnalyses.load(Paths.get(analysesFile), dictionary);
+		MorphParser parser = new MorphParser(dictionary,
+				SegmentedLruCache.factory(MorphParser.DEFAULT_CACHE_SIZE, 0, TimeUnit.SECONDS), analyses);
+		BatchAnalyzer analyzer = new BatchAnalyzer(parser, format, text, threads, chunkSize);
+
+		Stats stats;
+		if (files.size() == 2) {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(files.get(1)), 1 << 16)) {
+				stats = analyzer.analyze(Paths.get(files.get(0)), out);
+			}
+		} else {
+			stats = analyzer.analyze(Paths.get(files.get(0)), System.out);
+			System.out.flush();
+		}
+
+		System.err.println(stats);
+		for (Map.Entry<String, CacheStats> entry : parser.getCacheStats().entrySet()) {
+			System.err.println(entry.getKey() + " cache: " + entry.getValue());
+		}
+	}
+
+	/**
+	 * Analyzes a file
+	 *
+	 * @param input
+	 *            The file of UTF-8 text to be analyzed
+	 * @param out
+	 *            The stream the analyses are written to, which is neither
+	 *            flushed nor closed
+	 * @return The statistics of the run
+	 * @throws IOException
+	 *             If the file cannot be read or the analyses written
+	 */
+	public Stats analyze(Path input, OutputStream out) throws IOException {
+
+		long start = System.nanoTime();
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "batch-analyzer-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long bytes = 0, words = 0, failures = 0;
+		int chunks = 0;
+
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+
+			// two chunks per thread keep the threads busy while the first
+			// chunk in line is written
+			Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+			long size = channel.size();
+			long from = 0;
+
+			while (from < size) {
+				long to = chunkEnd(channel, from, size);
+				long position = from;
+				long length = to - from;
+				inFlight.add(workers.submit(() -> analyze(channel, position, length)));
+				chunks++;
+				from = to;
+
+				if (inFlight.size() >= 2 * threads) {
+					Chunk chunk = await(inFlight.poll());
+					out.write(chunk.output);
+					words += chunk.words;
+					failures += chunk.failures;
+				}
+			}
+
+			while (!inFlight.isEmpty()) {
+				Chunk chunk = await(inFlight.poll());
+				out.write(chunk.output);
+				words += chunk.words;
+				failures += chunk.failures;
+			}
+
+			bytes = size;
+		} finally {
+			workers.shutdownNow();
+		}
+
+		return new Stats(bytes, words, failures, chunks, System.nanoTime() - start);
+	}
+
+	// the end of the chunk starting at the passed position: the position
+	// following the first line feed after the chunk size, or if none comes
+	// within another chunk size, following the last white space before that,
+	// or failing that the last character boundary
+	private long chunkEnd(FileChannel channel, long from, long size) throws IOException {
+
+		long limit = Math.min(from + 2L * chunkSize, size);
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		long position = Math.min(from + chunkSize, size);
+		while (position < limit) {
+			int read = read(channel, buffer, position, limit);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == LF) {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		if (limit == size) {
+			return size;
+		}
+
+		// UTF-8 has no ASCII bytes within other characters, so cutting after
+		// an ASCII white space or before a byte starting a character keeps
+		// the characters whole
+		for (long end = limit; end > from;) {
+			long start = Math.max(from, end - buffer.capacity());
+			int read = read(channel, buffer, start, end);
+			for (int i = read - 1; i >= 0; i--) {
+				byte b = buffer.get(i);
+				if (b >= 0 && Character.isWhitespace((char) b)) {
+					return start + i + 1;
+				}
+			}
+			end = start;
+		}
+
+		long start = Math.max(from + 1, limit - 3);
+		int read = read(channel, buffer, start, limit + 1);
+		for (int i = read - 1; i >= 0; i--) {
+			if ((buffer.get(i) & 0xC0) != 0x80) {
+				return start + i;
+			}
+		}
+		return limit;
+	}
+
+	// reads the bytes from start to end, which are in the file, into the
+	// start of the buffer, returning their number
+	private static int read(FileChannel channel, ByteBuffer buffer, long start, long end) throws IOException {
+		buffer.clear();
+		buffer.limit((int) Math.min(buffer.capacity(), end - start));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, start + buffer.position()) < 0) {
+				throw new IOException("The file was truncated while it was read");
+			}
+		}
+		return buffer.position();
+	}
+
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private Chunk analyze(FileChannel channel, long position, long length) throws IOException {
+
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+
+		StringBuilder sb = builders.get();
+		sb.setLength(0);
+		int words = 0, failures = 0;
+
+		if (text) {
+			WordTokenizer tokenizer = new WordTokenizer(
+					new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()));
+			while (tokenizer.next()) {
+				if (!append(sb, tokenizer.getWord(), true)) {
+					failures++;
+				}
+				words++;
+			}
+		} else {
+			char[] array = chars.array();
+			int end = chars.arrayOffset() + chars.limit();
+			int start = -1;
+			for (int i = chars.arrayOffset() + chars.position(); i <= end; i++) {
+				boolean space = i == end || Character.isWhitespace(array[i]);
+				if (space && start >= 0) {
+					if (!append(sb, new String(array, start, i - start), false)) {
+						failures++;
+					}
+					words++;
+					start = -1;
+				} else if (!space && start < 0) {
+					start = i;
+				}
+			}
+		}
+
+		return new Chunk(sb.toString().getBytes(StandardCharsets.UTF_8), words, failures);
+	}
+
+	// appends the line of a word, the bare word if the parser fails on it, in
+	// which case false is returned
+	private boolean append(StringBuilder sb, String word, boolean asWritten) {
+		MorphNode node;
+		try {
+			node = asWritten ? parser.parseAsWritten(word) : parser.parse(word);
+		} catch (RuntimeException | StackOverflowError e) {
+			logger.warn("Failed to analyze '{}': {}", word, e.toString());
+			format.append(sb, word, new MorphNode(word, MorphType.Word));
+			return false;
+		}
+		format.append(sb, word, node);
+		return true;
+	}
+
+	private static final class Chunk {
+
+		private final byte[] output;
+		private final int words;
+		private final int failures;
+
+		private Chunk(byte[] output, int words, int failures) {
+			this.output = output;
+			this.words = words;
+			this.failures = failures;
+		}
+	}
+
+	/**
+	 * The statistics of a run
+	 */
+	public static final class Stats {
+
+		private final long bytes;
+		private final long words;
+		private final long failures;
+		private final int chunks;
+		private final long nanos;
+
+		public Stats(long bytes, long words, long failures, int chunks, long nanos) {
+			this.bytes = bytes;
+			this.words = words;
+			this.failures = failures;
+			this.chunks = chunks;
+			this.nanos = nanos;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getWords() {
+			return words;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		public int getChunks() {
+			return chunks;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(nanos, 1) / 1e9;
+			return String.format("%d words (%d failed), %d bytes in %d chunks, %d ms: %.0f words/s, %.1f MB/s",
+					words, failures, bytes, chunks, TimeUnit.NANOSECONDS.toMillis(nanos), words / seconds,
+					bytes / seconds / (1 << 20));
+		}
+	}
+}
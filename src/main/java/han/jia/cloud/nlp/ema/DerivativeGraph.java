@@ -0,0 +1,346 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The derivative graph compiled into primitive arrays.
+ *
+ * <p>
+ * Each word of the graph gets an integer id. For each id, the id of its stem
+ * and the id of its root are precomputed, and its derivatives are kept in a
+ * compressed sparse row layout: the ids of the derivatives of word {@code i}
+ * are {@code derivatives[offsets[i]]} up to {@code derivatives[offsets[i + 1]]}.
+ * Finding the root of a word is therefore a hash lookup plus an array read,
+ * instead of walking {@code GraphNode} objects.
+ *
+ * <p>
+ * The graph may also hold words that are referred to without being members
+ * of the derivative dictionary themselves; their root id is -1.
+ *
+ * <p>
+ * Instances are immutable and safe to be shared by many threads.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class DerivativeGraph {
+
+	/**
+	 * The id standing for no word
+	 */
+	public static final int NONE = -1;
+
+	private final String[] words;
+	private final int[] stems;
+	private final int[] roots;
+	private final int[] offsets;
+	private final int[] derivatives;
+
+	// open-addressing index of the ids by their words, each slot holding id + 1
+	private final int[] slots;
+	private final int mask;
+
+	/**
+	 * Creates a graph out of its arrays, all of which are indexed by word id
+	 * except for {@code derivatives}
+	 *
+	 * @param words
+	 *            The words
+	 * @param stems
+	 *            The stem id of each word, or {@link #NONE}
+	 * @param roots
+	 *            The root id of each word, or {@link #NONE} if the word is not
+	 *            a member of the derivative dictionary
+	 * @param offsets
+	 *            The start of the derivatives of each word, plus the end of the
+	 *            last one
+	 * @param derivatives
+	 *            The derivative ids of all words
+	 */
+	public DerivativeGraph(String[] words, int[] stems, int[] roots, int[] offsets, int[] derivatives) {
+
+		int n = words.length;
+		if (stems.length != n || roots.length != n || offsets.length != n + 1
+				|| offsets[n] != derivatives.length) {
+			throw new IllegalArgumentException("Inconsistent derivative graph arrays");
+		}
+
+		this.words = words;
+		this.stems = stems;
+		this.roots = roots;
+		this.offsets = offsets;
+		this.derivatives = derivatives;
+
+		int capacity = Integer.highestOneBit(Math.max(4, n) * 2 - 1) << 1;
+		slots = new int[capacity];
+		mask = capacity - 1;
+
+		for (int id = 0; id < n; id++) {
+			int i = spread(words[id].hashCode()) & mask;
+			while (slots[i] != 0) {
+				if (words[slots[i] - 1].equals(words[id])) {
+					throw new IllegalArgumentException("Duplicate word in derivative graph: " + words[id]);
+				}
+				i = (i + 1) & mask;
+			}
+			slots[i] = id + 1;
+		}
+	}
+
+	/**
+	 * Compiles a graph of {@code GraphNode} objects. The root of each word is
+	 * the one found by {@link GraphNode#findRoot()} on its node.
+	 *
+	 * @param derivativeMap
+	 *            The nodes keyed on their words
+	 * @return The compiled graph
+	 */
+	public static DerivativeGraph of(Map<String, GraphNode> derivativeMap) {
+
+		Builder builder = new Builder();
+		for (Map.Entry<String, GraphNode> entry : derivativeMap.entrySet()) {
+			GraphNode node = entry.getValue();
+
+			List<String> derivatives = new ArrayList<>();
+			if (node.getDerivatives() != null) {
+				for (GraphNode derivative : node.getDerivatives()) {
+					derivatives.add(derivative.getWord());
+				}
+			}
+
+			builder.put(entry.getKey(), node.getStem() == null ? null : node.getStem().getWord(),
+					node.findRoot(), derivatives);
+		}
+		return builder.build();
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the id of a word
+	 *
+	 * @param word
+	 *            The word whose id is to be found
+	 * @return The id of the word, or {@link #NONE} if it is not in the graph
+	 */
+	public int idOf(String word) {
+		if (word == null) {
+			return NONE;
+		}
+
+		int i = spread(word.hashCode()) & mask;
+		while (slots[i] != 0) {
+			int id = slots[i] - 1;
+			if (words[id].equals(word)) {
+				return id;
+			}
+			i = (i + 1) & mask;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the root of a word
+	 *
+	 * @param word
+	 *            The word whose root is to be found
+	 *
+	 * @return {@literal null} if the word does not exist in the derivative
+	 *         dictionary, otherwise the entire word if the word has no stem or
+	 *         the root otherwise.
+	 */
+	public String findRoot(String word) {
+		int id = idOf(word);
+		if (id == NONE || roots[id] == NONE) {
+			return null;
+		}
+		return words[roots[id]];
+	}
+
+	/**
+	 * Returns the derivatives of a word
+	 *
+	 * @param word
+	 *            The word whose derivatives are to be found
+	 * @return The derivatives, or an empty list if there are none
+	 */
+	public List<String> findDerivatives(String word) {
+		int id = idOf(word);
+		if (id == NONE || offsets[id] == offsets[id + 1]) {
+			return Collections.emptyList();
+		}
+
+		List<String> list = new ArrayList<>(offsets[id + 1] - offsets[id]);
+		for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+			list.add(words[derivatives[i]]);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the number of words in this graph
+	 *
+	 * @return The number of words
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	public String getWord(int id) {
+		return words[id];
+	}
+
+	public int getStemId(int id) {
+		return stems[id];
+	}
+
+	public int getRootId(int id) {
+		return roots[id];
+	}
+
+	/**
+	 * Returns the ids of the derivatives of a word
+	 *
+	 * @param id
+	 *            The id of the word
+	 * @return A copy of the derivative ids
+	 */
+	public int[] getDerivativeIds(int id) {
+		return Arrays.copyOfRange(derivatives, offsets[id], offsets[id + 1]);
+	}
+
+	/**
+	 * Collects the words of a derivative graph before compiling them into a
+	 * {@code DerivativeGraph}. A word put more than once keeps what was put
+	 * last.
+	 */
+	public static final class Builder {
+
+		private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+		private static final class Entry {
+
+			private final String stem;
+			private final String root;
+			private final Set<String> derivatives;
+
+			private Entry(String stem, String root, Set<String> derivatives) {
+				this.stem = stem;
+				this.root = root;
+				this.derivatives = derivatives;
+			}
+		}
+
+		/**
+		 * Adds a row of the derivative table: the stem is put with its
+		 * derivatives, and each derivative is put with the stem as both its
+		 * stem and its root.
+		 *
+		 * @param stem
+		 *            The stem
+		 * @param derivatives
+		 *            The words derived from the stem
+		 * @return This builder
+		 */
+		public Builder addDerivatives(String stem, Collection<String> derivatives) {
+			put(stem, null, stem, derivatives);
+			for (String derivative : derivatives) {
+				put(derivative, stem, stem, Collections.<String> emptyList());
+			}
+			return this;
+		}
+
+		/**
+		 * Puts a word with its stem, root and derivatives
+		 *
+		 * @param word
+		 *            The word
+		 * @param stem
+		 *            The stem of the word, or null
+		 * @param root
+		 *            The root of the word
+		 * @param derivatives
+		 *            The derivatives of the word
+		 * @return This builder
+		 */
+		public Builder put(String word, String stem, String root, Collection<String> derivatives) {
+			entries.put(word, new Entry(stem, root, new LinkedHashSet<>(derivatives)));
+			return this;
+		}
+
+		/**
+		 * Compiles the words put so far
+		 *
+		 * @return The compiled graph
+		 */
+		public DerivativeGraph build() {
+
+			Map<String, Integer> ids = new LinkedHashMap<>(entries.size() * 2);
+			for (String word : entries.keySet()) {
+				ids.put(word, ids.size());
+			}
+
+			// words referred to but never put are appended as non-members
+			for (Entry entry : entries.values()) {
+				idOf(ids, entry.stem);
+				idOf(ids, entry.root);
+				for (String derivative : entry.derivatives) {
+					idOf(ids, derivative);
+				}
+			}
+
+			int n = ids.size();
+			String[] words = ids.keySet().toArray(new String[n]);
+			int[] stems = new int[n];
+			int[] roots = new int[n];
+			int[] offsets = new int[n + 1];
+			Arrays.fill(stems, NONE);
+			Arrays.fill(roots, NONE);
+
+			int count = 0;
+			for (Entry entry : entries.values()) {
+				count += entry.derivatives.size();
+			}
+			int[] derivatives = new int[count];
+
+			int id = 0;
+			int next = 0;
+			for (Entry entry : entries.values()) {
+				stems[id] = idOf(ids, entry.stem);
+				roots[id] = idOf(ids, entry.root);
+				offsets[id] = next;
+				for (String derivative : entry.derivatives) {
+					derivatives[next++] = ids.get(derivative);
+				}
+				id++;
+			}
+			for (; id <= n; id++) {
+				offsets[id] = next;
+			}
+
+			return new DerivativeGraph(words, stems, roots, offsets, derivatives);
+		}
+
+		private static int idOf(Map<String, Integer> ids, String word) {
+			if (word == null) {
+				return NONE;
+			}
+			Integer id = ids.get(word);
+			if (id == null) {
+				id = ids.size();
+				ids.put(word, id);
+			}
+			return id;
+		}
+	}
+}
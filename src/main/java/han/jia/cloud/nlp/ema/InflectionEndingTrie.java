@@ -0,0 +1,227 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A trie of all the endings the inflection checks look for, keyed on their
+ * characters read from right to left.
+ *
+ * <p>
+ * The endings come in categories, one per check of the parser: consonant + y
+ * endings (cities), vowel + consonant + consonant endings (hotter), the 'ed',
+ * 'er', 'est' and 'ing' endings, the plain 's' and the 'es' endings (boxes).
+ * One backward scan of a word tells which categories apply and, for each of
+ * them, where the word is cut by the first ending of the category, in list
+ * order, that the word ends with, which is the ending a linear scan of the
+ * list would find.
+ *
+ * <p>
+ * An instance is immutable and can be shared by many threads.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class InflectionEndingTrie {
+
+	/**
+	 * The category of the consonant + y endings, e.g. 'ties' in 'cities'
+	 */
+	public static final int CONSONANT_Y = 0;
+
+	/**
+	 * The category of the vowel + consonant + consonant endings, e.g. 'otter'
+	 * in 'hotter'
+	 */
+	public static final int VOWEL_CONSONANT_CONSONANT = 1;
+
+	/**
+	 * The category of the 'ed', 'er', 'est' and 'ing' endings
+	 */
+	public static final int ED_ER_EST_ING = 2;
+
+	/**
+	 * The category of the plain 's' ending
+	 */
+	public static final int S = 3;
+
+	/**
+	 * The category of the 'es' endings, e.g. 'xes' in 'boxes'
+	 */
+	public static final int ES = 4;
+
+	/**
+	 * The number of categories, i.e. the length of the array of cuts
+	 */
+	public static final int CATEGORIES = 5;
+
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final int NO_RANK = Integer.MAX_VALUE;
+
+	private final Node root = new Node();
+
+	/**
+	 * Builds the trie out of the ending lists, null lists being taken as empty
+	 *
+	 * @param cYs
+	 *            The consonant + y endings
+	 * @param vCCs
+	 *            The vowel + consonant + consonant endings
+	 * @param edErEstIng
+	 *            The 'ed', 'er', 'est' and 'ing' endings
+	 * @param esEnding
+	 *            The 'es' endings
+	 */
+	public InflectionEndingTrie(List<String> cYs, List<String> vCCs, List<String> edErEstIng,
+			List<String> esEnding) {
+		insert(CONSONANT_Y, cYs);
+		insert(VOWEL_CONSONANT_CONSONANT, vCCs);
+		insert(ED_ER_EST_ING, edErEstIng);
+		insert(S, Collections.singletonList("s"));
+		insert(ES, esEnding);
+		resolve(root, new int[CATEGORIES], new int[CATEGORIES]);
+	}
+
+	private void insert(int category, List<String> endings) {
+		if (endings == null) {
+			return;
+		}
+
+		for (int rank = 0; rank < endings.size(); rank++) {
+			String ending = endings.get(rank);
+			Node node = root;
+			for (int i = ending.length() - 1; i >= 0; i--) {
+				node = node.childOrNew(ending.charAt(i));
+			}
+			node.rankOf(category, rank);
+		}
+	}
+
+	/**
+	 * Settles, for each node and category, the first ending in list order
+	 * among the endings on the path to the node, which is the ending found for
+	 * any word whose backward scan stops at the node
+	 */
+	private void resolve(Node node, int[] lengths, int[] ranks) {
+
+		int[] nodeLengths = lengths.clone();
+		int[] nodeRanks = ranks.clone();
+		if (node.ranks != null) {
+			for (int category = 0; category < CATEGORIES; category++) {
+				int rank = node.ranks[category];
+				if (rank != NO_RANK && (nodeLengths[category] == 0 || rank < nodeRanks[category])) {
+					nodeLengths[category] = node.depth;
+					nodeRanks[category] = rank;
+				}
+			}
+		}
+
+		node.categories = 0;
+		for (int category = 0; category < CATEGORIES; category++) {
+			if (nodeLengths[category] != 0) {
+				node.categories |= 1 << category;
+			}
+		}
+		node.lengths = nodeLengths;
+
+		for (Node child : node.children) {
+			resolve(child, nodeLengths, nodeRanks);
+		}
+	}
+
+	/**
+	 * Classifies the word by its endings
+	 *
+	 * @param word
+	 *            The word to be classified
+	 * @param cuts
+	 *            Receives, for each category, the length of the word without
+	 *            the first ending of the category it ends with, or -1 if it
+	 *            ends with none; its length must be at least
+	 *            {@link #CATEGORIES}
+	 * @return The bits of the categories that apply, 0 if none
+	 */
+	public int classify(String word, int[] cuts) {
+
+		// the deepest node the word reaches settles every category
+		Node node = root;
+		for (int i = word.length() - 1; i >= 0; i--) {
+			Node child = node.child(word.charAt(i));
+			if (child == null) {
+				break;
+			}
+			node = child;
+		}
+
+		for (int category = 0; category < CATEGORIES; category++) {
+			int length = node.lengths[category];
+			cuts[category] = length == 0 ? -1 : word.length() - length;
+		}
+		return node.categories;
+	}
+
+	/**
+	 * Checks whether a category applies to the bits returned by
+	 * {@link #classify(String, int[])}
+	 *
+	 * @param categories
+	 *            The bits of the categories that apply
+	 * @param category
+	 *            The category to be checked
+	 * @return true if the category applies; false otherwise
+	 */
+	public static boolean has(int categories, int category) {
+		return (categories & (1 << category)) != 0;
+	}
+
+	private static class Node {
+
+		private char[] labels = NO_LABELS;
+		private Node[] children = NO_CHILDREN;
+
+		// the number of chars on the path from the root
+		private int depth;
+
+		// the position of the ending ending here in the list of each
+		// category, or null if no ending ends here
+		private int[] ranks;
+
+		// the length of the ending found for each category by a scan stopping
+		// here, 0 if none, and the bits of the categories found
+		private int[] lengths;
+		private int categories;
+
+		private Node child(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node childOrNew(char c) {
+			Node child = child(c);
+			if (child == null) {
+				child = new Node();
+				child.depth = depth + 1;
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				labels[labels.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+
+		private void rankOf(int category, int rank) {
+			if (ranks == null) {
+				ranks = new int[CATEGORIES];
+				Arrays.fill(ranks, NO_RANK);
+			}
+			ranks[category] = Math.min(ranks[category], rank);
+		}
+	}
+}
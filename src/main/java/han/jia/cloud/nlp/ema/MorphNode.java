@@ -1,49 +1,50 @@
 package han.jia.cloud.nlp.ema;
 
-import static java.util.stream.Collectors.toList;
-import static han.jia.cloud.nlp.util.Constants.*;
-
 import han.jia.cloud.nlp.enums.MorphType;
 import han.jia.cloud.nlp.util.Dictionary;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
  * This class models a word's internal structure and provides means to
  * manipulate its morphemes.
  * 
+ * <p>
+ * Instances are immutable: the methods that seem to modify a MorphNode return
+ * a new one sharing the unchanged sub-nodes instead. A parsed tree can
+ * therefore be cached and handed to any number of threads as it is.
+ * 
  * @author Jiayun Han
  *
  */
 public class MorphNode {
 
-	private static boolean called;
-
-	// The depth of this Node. Depth number starts from 0.
-	private int depth;
-
 	/**
 	 * The text of this Node, which can be the whole word or one of its
 	 * components, depending on its depth
 	 */
-	private String text;
+	private final String text;
 
 	/**
 	 * The morphological type of this Node. It is one of the 6 enum constants.
 	 */
-	private MorphType morphType;
+	private final MorphType morphType;
 
 	/**
 	 * The left sub-node of this Node
 	 */
-	private MorphNode son;
+	private final MorphNode son;
 
 	/**
 	 * The right sub-node of this Node
 	 */
-	private MorphNode daughter;
+	private final MorphNode daughter;
 
 	/**
 	 * It creates a new instance of MorphNode, using the provided parameters.
@@ -58,10 +59,10 @@ public class MorphNode {
 	 *            The right sub-MorphNode of this MorphNode
 	 */
 	public MorphNode(String text, MorphType morphType, MorphNode son, MorphNode daughter) {
-		setText(text);
-		setType(morphType);
-		setSon(son);
-		setDaughter(daughter);
+		this.text = text;
+		this.morphType = morphType;
+		this.son = son;
+		this.daughter = daughter;
 	}
 
 	/**
@@ -77,23 +78,6 @@ public class MorphNode {
 		this(text, morphType, null, null);
 	}
 
-	/**
-	 * @return The depth of this Node
-	 */
-	public int getDepth() {
-		return depth;
-	}
-
-	/**
-	 * Sets the depths of this Node.
-	 * 
-	 * @param depth
-	 *            The value of the depth to be set.
-	 */
-	public void setDepth(int depth) {
-		this.depth = depth;
-	}
-
 	/**
 	 * @return The text of this Node, which can be the whole word or one of its
 	 *         components.
@@ -102,16 +86,6 @@ public class MorphNode {
 		return text;
 	}
 
-	/**
-	 * Sets the text of this Node.
-	 * 
-	 * @param text
-	 *            The new text to be assigned to this Node.
-	 */
-	public void setText(String text) {
-		this.text = text;
-	}
-
 	/**
 	 * @return The morphological type of this Node. It is one of the 6 enum
 	 *         constants.
@@ -121,27 +95,36 @@ public class MorphNode {
 	}
 
 	/**
-	 * Sets the type of this Node.
+	 * Returns a Node of the passed type, sharing the text and the sub-nodes of
+	 * this one
 	 * 
 	 * @param type
-	 *            The new type to be assigned to this Node.
+	 *            The type of the Node to be returned
+	 * 
+	 * @return This instance itself if it is already of the type, a new Node
+	 *         otherwise
 	 */
-	public void setType(MorphType type) {
-		this.morphType = type;
+	public MorphNode withType(MorphType type) {
+		return type == morphType ? this : new MorphNode(text, type, son, daughter);
 	}
 
 	/**
-	 * Sets the type of this Node and return this instance itself to chaining
-	 * operations
+	 * Returns a Node with the passed sub-nodes, sharing the text and the type
+	 * of this one
 	 * 
-	 * @param type
-	 *            The new type to be assigned to this Node.
+	 * @param son
+	 *            The left sub-node of the Node to be returned
+	 * @param daughter
+	 *            The right sub-node of the Node to be returned
 	 * 
-	 * @return This instance itself to chaining operations
+	 * @return This instance itself if it already has the sub-nodes, a new Node
+	 *         otherwise
 	 */
-	public MorphNode type(MorphType type) {
-		this.morphType = type;
-		return this;
+	public MorphNode withChildren(MorphNode son, MorphNode daughter) {
+		if (son == this.son && daughter == this.daughter) {
+			return this;
+		}
+		return new MorphNode(text, morphType, son, daughter);
 	}
 
 	/**
@@ -151,18 +134,6 @@ public class MorphNode {
 		return son;
 	}
 
-	/**
-	 * Sets the left-node of this Node.
-	 * 
-	 * @param node
-	 *            The value to be assigned to the son of this Node.
-	 */
-	public void setSon(MorphNode node) {
-		if (node != null) {
-			this.son = node;
-		}
-	}
-
 	/**
 	 * @return The right sub-node of this Node
 	 */
@@ -171,19 +142,8 @@ public class MorphNode {
 	}
 
 	/**
-	 * Sets the right-node of this Node.
-	 * 
-	 * @param node
-	 *            The value to be assigned to the daughter of this Node.
-	 */
-	public void setDaughter(MorphNode node) {
-		if (node != null) {
-			this.daughter = node;
-		}
-	}
-
-	/**
-	 * It retrieves the son and daughter of a MorphNode at the specified depth.
+	 * It retrieves the son and daughter of a MorphNode at the specified depth,
+	 * this Node being at depth 0.
 	 * 
 	 * @param depth
 	 *            The depth at which the son and daughter to be retrieved
@@ -198,8 +158,12 @@ public class MorphNode {
 	 *          </ul>
 	 */
 	public MorphNode[] getChildren(int depth) {
+		return getChildrenAux(0, depth);
+	}
+
+	private MorphNode[] getChildrenAux(int current, int depth) {
 		// stop case 1: found instantaited son and daughter
-		if (this.depth == depth) {
+		if (current == depth) {
 			return new MorphNode[] { son, daughter };
 		}
 
@@ -212,41 +176,31 @@ public class MorphNode {
 		// recursion: case 3: has instantiated son-side grandchildren,
 		// search and return the son's children.
 		if (son.getSon() != null) {
-			return son.getChildren(depth);
+			return son.getChildrenAux(current + 1, depth);
 		}
 
 		// recursion: case 4: has daughter-side grandchildren,
 		// search and return the daughter's children.
-		return daughter.getChildren(depth);
+		return daughter.getChildrenAux(current + 1, depth);
 	}
 
 	/**
-	 * Downgrades this MorphNode by increasing its depth and the depths of all
-	 * of its child MorphNodes by 1 recursively.
+	 * Returns the downgraded form of this MorphNode, which is a Stem instead of
+	 * a Word, as are all of its child MorphNodes recursively.
+	 * 
+	 * @return This instance itself if nothing needs downgrading, a new
+	 *         MorphNode sharing the unchanged sub-nodes otherwise
 	 */
-	public void downgrade() {
+	public MorphNode downgrade() {
 
-		this.setDepth(depth++);
+		MorphType type = morphType == MorphType.Word ? MorphType.Stem : morphType;
+		MorphNode newSon = son == null ? null : son.downgrade();
+		MorphNode newDaughter = daughter == null ? null : daughter.downgrade();
 
-		if (morphType == MorphType.Word) {
-			morphType = MorphType.Stem;
+		if (type == morphType && newSon == son && newDaughter == daughter) {
+			return this;
 		}
-
-		if (son != null)
-			son.downgrade();
-
-		if (daughter != null)
-			daughter.downgrade();
-	}
-
-	private static String catStrs(int times, String symbol) {
-
-		String ss = EMPTY_STR;
-		for (int i = 0; i < times; i++) {
-			ss += symbol;
-		}
-
-		return ss;
+		return new MorphNode(text, type, newSon, newDaughter);
 	}
 
 	/**
@@ -262,65 +216,56 @@ public class MorphNode {
 	 *            The string marker for connect strings vertically
 	 * 
 	 * @return A pretty-formatted string representation of this instance
+	 * 
+	 * @see MorphNodeFormat#TREE
 	 */
 	public String prettyPrint(int times, String hMarker, String vMarker) {
 
-		String indentation = catStrs(hMarker.length(), ONE_SPACE);
-		String pipes = catStrs(times, vMarker + ONE_SPACE);
-		String s = pipes + hMarker + text + LEFT_BRACE + this.morphType + RIGHT_BRACE;
-
-		if (son != null) {
-
-			times++;
-			pipes += vMarker + ONE_SPACE;
-
-			if (!called) {
-				called = true;
-
-				// 1 accounts for '-' in '+-'
-				indentation = catStrs(times + 1, ONE_SPACE);
-			}
-
-			String sonStr = son == null ? EMPTY_STR : son.prettyPrint(times, hMarker, vMarker);
-			String daughterStr = daughter == null ? EMPTY_STR : daughter.prettyPrint(times, hMarker, vMarker);
-
-			s += NL + indentation + sonStr;
-			s += NL + indentation + pipes + vMarker;
-			s += NL + indentation + daughterStr;
+		StringBuilder sb = new StringBuilder(64);
+		try {
+			MorphNodeFormat.writeTree(this, sb, times, hMarker, vMarker);
+		} catch (IOException e) {
+			// a StringBuilder does not throw it
+			throw new UncheckedIOException(e);
 		}
+		return sb.toString();
+	}
 
-		return s;
+	/**
+	 * Writes this instance to an Appendable in the passed format, without
+	 * building any intermediate string
+	 * 
+	 * @param out
+	 *            The destination of the text, e.g. a Writer
+	 * @param format
+	 *            The format of the text
+	 * @throws IOException
+	 *             If the destination fails
+	 */
+	public void writeTo(Appendable out, MorphNodeFormat format) throws IOException {
+		format.write(this, out);
 	}
 
 	/**
-	 * Returns the string representation of this instance
+	 * Returns the string representation of this instance, i.e. its tree view
 	 * 
 	 * @return the string representation of this instance
+	 * 
+	 * @see MorphNodeFormat#TREE
 	 */
 	public String toString() {
-		called = false;
-		return prettyPrint(0, "+-", "|");
+		return MorphNodeFormat.TREE.format(this);
 	}
 
 	/**
-	 * Clones a MorphNode out of this Node.
+	 * Returns this Node itself, since a MorphNode is immutable and can be
+	 * shared freely.
 	 * 
-	 * @return A new MorphNode cloned out of this Node
+	 * @return This Node
 	 */
 	@Override
 	public Object clone() {
-
-		MorphNode node = new MorphNode(text, morphType, null, null);
-
-		if (son != null) {
-			node.setSon((MorphNode) son.clone());
-		}
-
-		if (daughter != null) {
-			node.setDaughter((MorphNode) daughter.clone());
-		}
-
-		return node;
+		return this;
 	}
 
 	@Override
@@ -346,7 +291,9 @@ public class MorphNode {
 	 * @return The content morphemes of this instance
 	 */
 	public List<String> findContentMorphemes() {
-		return findMorphemes(m -> m.getType() != MorphType.Inflection);
+		List<String> morphemes = new ArrayList<>();
+		collectMorphemes(MorphType.Inflection, true, morphemes);
+		return morphemes;
 	}
 
 	/**
@@ -362,7 +309,7 @@ public class MorphNode {
 	 *         types
 	 */
 	public List<String> findContentMorphemes(MorphType type) {
-		return findMorphemes(m -> m.getType() == type);
+		return findMorphemes(type);
 	}
 
 	/**
@@ -372,7 +319,7 @@ public class MorphNode {
 	 * @return all prefixes of this instance
 	 */
 	public List<String> findPrefixes() {
-		return findMorphemes(m -> m.getType() == MorphType.Prefix);
+		return findMorphemes(MorphType.Prefix);
 	}
 
 	/**
@@ -382,7 +329,7 @@ public class MorphNode {
 	 * @return all suffixes of this instance
 	 */
 	public List<String> findSuffixes() {
-		return findMorphemes(m -> m.getType() == MorphType.Suffix);
+		return findMorphemes(MorphType.Suffix);
 	}
 
 	/**
@@ -391,7 +338,7 @@ public class MorphNode {
 	 * @return The stems of this instance
 	 */
 	public List<String> findStems() {
-		return findMorphemes(m -> m.getType() == MorphType.Stem);
+		return findMorphemes(MorphType.Stem);
 	}
 
 	/**
@@ -401,7 +348,13 @@ public class MorphNode {
 	 * @return The roots of this instance
 	 */
 	public List<String> findRoots() {
-		return findMorphemes(m -> m.getType() == MorphType.Root);
+		return findMorphemes(MorphType.Root);
+	}
+
+	private List<String> findMorphemes(MorphType type) {
+		List<String> morphemes = new ArrayList<>();
+		collectMorphemes(type, false, morphemes);
+		return morphemes;
 	}
 
 	/**
@@ -413,7 +366,13 @@ public class MorphNode {
 	 * @return The morphems that satisfy the filter
 	 */
 	public List<String> findMorphemes(Predicate<MorphNode> filter) {
-		return findAllMorphemes().stream().filter(filter).map(MorphNode::getText).collect(toList());
+		List<String> morphemes = new ArrayList<>();
+		forEachMorpheme(m -> {
+			if (filter.test(m)) {
+				morphemes.add(m.text);
+			}
+		});
+		return morphemes;
 	}
 
 	/**
@@ -423,100 +382,122 @@ public class MorphNode {
 	 */
 	public List<MorphNode> findAllMorphemes() {
 		List<MorphNode> nodes = new ArrayList<>();
-		findAllMorphemesAux(nodes);
+		forEachMorpheme(nodes::add);
 		return nodes;
 	}
 
 	/**
-	 * This is the actual method that recursively find and collect all morphemes
-	 * of this node.
+	 * Visits the morphemes of this node, i.e. the nodes with no son or
+	 * daughter, from left to right. Nothing is allocated on the way.
 	 * 
-	 * @param stack
-	 *            as suggested by the name, it serves as the stack to collect
-	 *            the found morphemes.
+	 * @param action
+	 *            The action to perform on each morpheme
 	 */
-	private void findAllMorphemesAux(List<MorphNode> stack) {
+	public void forEachMorpheme(Consumer<? super MorphNode> action) {
 
 		if (son == null && daughter == null) {
-			stack.add(this);
+			action.accept(this);
 			return;
 		}
 
 		if (son != null) {
-			son.findAllMorphemesAux(stack);
+			son.forEachMorpheme(action);
 		}
 
 		if (daughter != null) {
-			daughter.findAllMorphemesAux(stack);
+			daughter.forEachMorpheme(action);
 		}
 	}
 
 	/**
-	 * It checks the validity of this MorphNode by examining its content
-	 * morphemes.
-	 * 
-	 * @param dictionary The dictionary used for validation
+	 * Adds the texts of the morphemes of a type to a caller-supplied buffer,
+	 * from left to right, so that the buffer can be reused from one node to
+	 * another.
 	 * 
-	 * @return The number of passing checks
+	 * @param type
+	 *            The type of the morphemes to be collected
+	 * @param buffer
+	 *            The collection the texts are added to
+	 * @return The number of texts added
 	 */
-	public int validate(Dictionary dictionary) {
+	public int collectMorphemes(MorphType type, Collection<? super String> buffer) {
+		return collectMorphemes(type, false, buffer);
+	}
 
-		int oks = 0;
-		List<String> roots = findRoots();
+	// collects the morphemes of the type, or of any other type if excluded
+	private int collectMorphemes(MorphType type, boolean excluded, Collection<? super String> buffer) {
 
-		for (String root : roots) {
-			if (dictionary.getWords().contains(root)) {
-				oks++;
+		if (son == null && daughter == null) {
+			if ((morphType == type) != excluded) {
+				buffer.add(text);
+				return 1;
 			}
+			return 0;
 		}
 
-		List<String> contentMorphemes = findContentMorphemes();
-
-		for (String morpheme : contentMorphemes) {
-
-			GraphNode graphNode = dictionary.getDerivativeMap().get(morpheme);
-			if (graphNode != null) {
-				String root = graphNode.findRoot();
-				if (roots.contains(root)) {
-					oks++;
-				}
-			}
+		int count = 0;
+		if (son != null) {
+			count += son.collectMorphemes(type, excluded, buffer);
 		}
-
-		return oks;
+		if (daughter != null) {
+			count += daughter.collectMorphemes(type, excluded, buffer);
+		}
+		return count;
 	}
 
 	/**
-	 * Sets the depths of the word and its left (son) and right (daughter)
-	 * components, recursively. The depths setting stops when a component
-	 * becomes {@literal null}.
+	 * Checks whether this node has a morpheme of a type and text
 	 * 
-	 * <p>
-	 * This method relies on the recursive helper method.
+	 * @param type
+	 *            The type of the morpheme
+	 * @param text
+	 *            The text of the morpheme
+	 * @return true if there is one; false otherwise
 	 */
-	public void organizeDepths() {
-		organizeDepthsAux(0);
+	public boolean hasMorpheme(MorphType type, String text) {
+
+		if (son == null && daughter == null) {
+			return morphType == type && this.text.equals(text);
+		}
+
+		return (son != null && son.hasMorpheme(type, text)) || (daughter != null && daughter.hasMorpheme(type, text));
 	}
 
 	/**
-	 * Sets the depths of the word and its left (son) and right (daughter)
-	 * components, recursively. The depths setting stops when a component
-	 * becomes {@literal null}.
+	 * It checks the validity of this MorphNode by examining its content
+	 * morphemes: a check passes for each root that is a word, and for each
+	 * content morpheme whose root in the derivative dictionary is one of the
+	 * roots.
 	 * 
-	 * @param initialDepth
-	 *            The value of the initial depth, the following value is based
-	 *            on this one incrementally.
+	 * @param dictionary The dictionary used for validation
+	 * 
+	 * @return The number of passing checks
 	 */
-	private void organizeDepthsAux(int initialDepth) {
+	public int validate(Dictionary dictionary) {
+		return countWordRoots(dictionary) + countDerivedMorphemes(this, dictionary);
+	}
 
-		setDepth(initialDepth);
+	private int countWordRoots(Dictionary dictionary) {
 
-		if (son != null) {
-			son.organizeDepthsAux(initialDepth + 1);
+		if (son == null && daughter == null) {
+			return morphType == MorphType.Root && dictionary.isWord(text) ? 1 : 0;
 		}
 
-		if (daughter != null) {
-			daughter.organizeDepthsAux(initialDepth + 1);
+		return (son == null ? 0 : son.countWordRoots(dictionary))
+				+ (daughter == null ? 0 : daughter.countWordRoots(dictionary));
+	}
+
+	private int countDerivedMorphemes(MorphNode tree, Dictionary dictionary) {
+
+		if (son == null && daughter == null) {
+			if (morphType == MorphType.Inflection) {
+				return 0;
+			}
+			String root = dictionary.findRoot(text);
+			return root != null && tree.hasMorpheme(MorphType.Root, root) ? 1 : 0;
 		}
+
+		return (son == null ? 0 : son.countDerivedMorphemes(tree, dictionary))
+				+ (daughter == null ? 0 : daughter.countDerivedMorphemes(tree, dictionary));
 	}
 }
@@ -0,0 +1,313 @@
+package han.jia.cloud.nlp.ema;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.util.Dictionary;
+
+/**
+ * A compact binary encoding of MorphNode trees, to store analyses in external
+ * caches or pass them between processes.
+ *
+ * <p>
+ * A tree is written in preorder, each node as a header byte followed by its
+ * text. The header holds the ordinal of the MorphType of the node and whether
+ * the node has a son and a daughter, which is all the shape the decoder needs.
+ * The text is the varint id of the text in the symbol table of the dictionary,
+ * or, for the rare text that is not in the table, its varint length and chars.
+ * As the affixes have the smallest ids, the analysis of a word takes about 11
+ * bytes on average, against more than 100 in JSON.
+ *
+ * <p>
+ * The analyses are encoded one after another into a {@code ByteBuffer} and
+ * decoded back in the same order. Encoding allocates nothing. Decoding
+ * allocates the nodes and the rare literal texts. A text of the table is
+ * fetched from the dictionary the first time its id is decoded, and then
+ * shared by all the nodes decoded later. This matters for a
+ * {@code MappedDictionary}, which builds a new string on every fetch.
+ *
+ * <pre>
+ * MorphNodeCodec codec = new MorphNodeCodec(dictionary);
+ * codec.encode(parser.parse("unhappiness"), buffer);
+ * ...
+ * MorphNode node = codec.decode(buffer);
+ * </pre>
+ *
+ * <p>
+ * The ids only hold for the contents of the dictionary they come from, so the
+ * encoder and the decoder must use the same version of it: key the stored
+ * analyses on the {@link #getFingerprint() fingerprint} of the codec.
+ *
+ * <p>
+ * An instance can be shared by many threads.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class MorphNodeCodec {
+
+	/**
+	 * The depth of the deepest tree decoded, far beyond the ten or so levels of
+	 * the deepest analysis, so that corrupt bytes cannot overflow the stack
+	 */
+	public static final int MAX_DEPTH = 64;
+
+	// header: the type in the low bits, then the flags
+	private static final int TYPE_MASK = 0x07;
+	private static final int SON = 0x08;
+	private static final int DAUGHTER = 0x10;
+	private static final int LITERAL = 0x20;
+
+	private static final MorphType[] TYPES = MorphType.values();
+
+	private final Dictionary dictionary;
+	private final long fingerprint;
+
+	// the texts of the ids decoded so far; a racy fill is harmless, as any
+	// thread fetching a text gets an equal string
+	private final String[] symbols;
+
+	/**
+	 * Creates a codec using the symbol table of the passed dictionary
+	 *
+	 * @param dictionary
+	 *            The dictionary whose symbol table numbers the texts
+	 */
+	public MorphNodeCodec(Dictionary dictionary) {
+		this.dictionary = dictionary;
+		this.fingerprint = fingerprint(dictionary);
+		this.symbols = new String[dictionary.getSymbolCount()];
+	}
+
+	/**
+	 * Returns a hash of the symbol table of the dictionary of this codec, equal
+	 * for two codecs exactly when they encode the texts alike
+	 *
+	 * @return The fingerprint of the symbol table
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Returns a 64-bit FNV-1a hash of the symbol table of a dictionary, each
+	 * symbol followed by a 0 char
+	 */
+	static long fingerprint(Dictionary dictionary) {
+		long hash = 0xcbf29ce484222325L;
+		int count = dictionary.getSymbolCount();
+		for (int id = 0; id < count; id++) {
+			String symbol = dictionary.getSymbol(id);
+			for (int i = 0; i <= symbol.length(); i++) {
+				hash ^= i < symbol.length() ? symbol.charAt(i) : 0;
+				hash *= 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the number of bytes the encoding of a tree takes
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @return The size of the encoding in bytes
+	 */
+	public int encodedSize(MorphNode node) {
+
+		int size = 1;
+		String text = node.getText();
+		int id = dictionary.getSymbolId(text);
+		if (id == Dictionary.NO_SYMBOL) {
+			size += varIntSize(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				size += varIntSize(text.charAt(i));
+			}
+		} else {
+			size += varIntSize(id);
+		}
+
+		if (node.getSon() != null) {
+			size += encodedSize(node.getSon());
+		}
+		if (node.getDaughter() != null) {
+			size += encodedSize(node.getDaughter());
+		}
+		return size;
+	}
+
+	/**
+	 * Encodes a tree into a buffer, from its position on
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @param buffer
+	 *            The buffer to write to, whose position is moved past the
+	 *            encoding
+	 * @throws BufferOverflowException
+	 *             If the encoding does not fit into the remaining bytes of the
+	 *             buffer, in which case its position is left unchanged
+	 */
+	public void encode(MorphNode node, ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			write(node, buffer);
+		} catch (BufferOverflowException e) {
+			buffer.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Encodes a tree into an array of its exact size
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @return The encoding
+	 */
+	public byte[] encode(MorphNode node) {
+		byte[] bytes = new byte[encodedSize(node)];
+		write(node, ByteBuffer.wrap(bytes));
+		return bytes;
+	}
+
+	private void write(MorphNode node, ByteBuffer buffer) {
+
+		MorphNode son = node.getSon();
+		MorphNode daughter = node.getDaughter();
+		String text = node.getText();
+		int id = dictionary.getSymbolId(text);
+
+		int header = node.getType().ordinal();
+		if (son != null) {
+			header |= SON;
+		}
+		if (daughter != null) {
+			header |= DAUGHTER;
+		}
+		if (id == Dictionary.NO_SYMBOL) {
+			header |= LITERAL;
+		}
+		buffer.put((byte) header);
+
+		if (id == Dictionary.NO_SYMBOL) {
+			putVarInt(buffer, text.length());
+			for (int i = 0; i < text.length(); i++) {
+				putVarInt(buffer, text.charAt(i));
+			}
+		} else {
+			putVarInt(buffer, id);
+		}
+
+		if (son != null) {
+			write(son, buffer);
+		}
+		if (daughter != null) {
+			write(daughter, buffer);
+		}
+	}
+
+	/**
+	 * Decodes a tree from a buffer, from its position on
+	 *
+	 * @param buffer
+	 *            The buffer to read from, whose position is moved past the
+	 *            encoding
+	 * @return The root of the tree
+	 * @throws IllegalArgumentException
+	 *             If the bytes are not an encoding of this codec, e.g. hold an
+	 *             unknown id, a literal longer than the remaining bytes or a
+	 *             tree deeper than {@link #MAX_DEPTH}
+	 * @throws java.nio.BufferUnderflowException
+	 *             If the encoding is cut short
+	 */
+	public MorphNode decode(ByteBuffer buffer) {
+		return decode(buffer, 1);
+	}
+
+	private MorphNode decode(ByteBuffer buffer, int depth) {
+
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Tree deeper than " + MAX_DEPTH + " at " + buffer.position());
+		}
+
+		int header = buffer.get() & 0xFF;
+		int type = header & TYPE_MASK;
+		if (type >= TYPES.length || (header & ~(TYPE_MASK | SON | DAUGHTER | LITERAL)) != 0) {
+			throw new IllegalArgumentException("Bad node header " + header + " at " + (buffer.position() - 1));
+		}
+
+		String text = (header & LITERAL) != 0 ? literal(buffer) : symbol(buffer);
+
+		MorphNode son = (header & SON) == 0 ? null : decode(buffer, depth + 1);
+		MorphNode daughter = (header & DAUGHTER) == 0 ? null : decode(buffer, depth + 1);
+		return new MorphNode(text, TYPES[type], son, daughter);
+	}
+
+	// each char takes at least a byte, so a longer literal is corrupt
+	private static String literal(ByteBuffer buffer) {
+
+		int at = buffer.position();
+		int length = getVarInt(buffer);
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Bad literal length " + length + " at " + at);
+		}
+
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			int c = getVarInt(buffer);
+			if ((c & ~0xFFFF) != 0) {
+				throw new IllegalArgumentException("Bad literal char " + c + " at " + (buffer.position() - 1));
+			}
+			chars[i] = (char) c;
+		}
+		return new String(chars);
+	}
+
+	private String symbol(ByteBuffer buffer) {
+
+		int at = buffer.position();
+		int id = getVarInt(buffer);
+		if (id < 0 || id >= symbols.length) {
+			throw new IllegalArgumentException("Bad symbol id " + id + " at " + at);
+		}
+
+		String text = symbols[id];
+		if (text == null) {
+			text = dictionary.getSymbol(id);
+			symbols[id] = text;
+		}
+		return text;
+	}
+
+	// an unsigned LEB128 varint: 7 bits a byte, the low bits first
+	private static void putVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Bad varint at " + (buffer.position() - 1));
+	}
+
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
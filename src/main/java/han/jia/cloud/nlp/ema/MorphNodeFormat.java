@@ -0,0 +1,221 @@
+package han.jia.cloud.nlp.ema;
+
+import static han.jia.cloud.nlp.util.Constants.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The text forms of a MorphNode tree. A tree is written straight to an
+ * {@code Appendable}, such as a {@code StringBuilder} or a {@code Writer}, one
+ * piece at a time: no intermediate string is built on the way, and a format is
+ * stateless, so it can be used by any number of threads at the same time.
+ *
+ * <pre>
+ * MorphNodeFormat.BRACKETED.write(node, writer);
+ * </pre>
+ *
+ * @author Jiayun Han
+ *
+ */
+public enum MorphNodeFormat {
+
+	/**
+	 * The tree view returned by {@link MorphNode#toString()}, one node per line
+	 * with its type in parentheses, e.g.
+	 *
+	 * <pre>
+	 * +-happiness(Word)
+	 *   | +-happy(Root)
+	 *   | |
+	 *   | +-ness(Suffix)
+	 * </pre>
+	 */
+	TREE {
+		@Override
+		public void write(MorphNode node, Appendable out) throws IOException {
+			writeTree(node, out, 0, "+-", "|");
+		}
+	},
+
+	/**
+	 * The compact bracketed notation, the two sub-nodes of a node joined by a
+	 * '+' in parentheses, e.g. {@code ((un+happy)+ness)}
+	 */
+	BRACKETED {
+		@Override
+		public void write(MorphNode node, Appendable out) throws IOException {
+
+			MorphNode son = node.getSon();
+			if (son == null) {
+				out.append(node.getText());
+				return;
+			}
+
+			out.append('(');
+			write(son, out);
+			MorphNode daughter = node.getDaughter();
+			if (daughter != null) {
+				out.append('+');
+				write(daughter, out);
+			}
+			out.append(')');
+		}
+	},
+
+	/**
+	 * A JSON object per node, with the sub-nodes of a node as its children,
+	 * e.g.
+	 * {@code {"text":"happiness","type":"Word","children":[{"text":"happy","type":"Root"},...]}}
+	 */
+	JSON {
+		@Override
+		public void write(MorphNode node, Appendable out) throws IOException {
+
+			out.append("{\"text\":");
+			writeJsonString(out, node.getText());
+			out.append(",\"type\":\"").append(node.getType().name()).append('"');
+
+			MorphNode son = node.getSon();
+			if (son != null) {
+				out.append(",\"children\":[");
+				write(son, out);
+				MorphNode daughter = node.getDaughter();
+				if (daughter != null) {
+					out.append(',');
+					write(daughter, out);
+				}
+				out.append(']');
+			}
+			out.append('}');
+		}
+	};
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Writes a MorphNode tree in this format
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @param out
+	 *            The destination of the text
+	 * @throws IOException
+	 *             If the destination fails
+	 */
+	public abstract void write(MorphNode node, Appendable out) throws IOException;
+
+	/**
+	 * Appends a MorphNode tree in this format to a builder, which never fails
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @param sb
+	 *            The builder to append to
+	 * @return The builder
+	 */
+	public StringBuilder append(MorphNode node, StringBuilder sb) {
+		try {
+			write(node, sb);
+		} catch (IOException e) {
+			// a StringBuilder does not throw it
+			throw new UncheckedIOException(e);
+		}
+		return sb;
+	}
+
+	/**
+	 * Returns a MorphNode tree in this format
+	 *
+	 * @param node
+	 *            The root of the tree
+	 * @return The text of the tree
+	 */
+	public String format(MorphNode node) {
+		return append(node, new StringBuilder(64)).toString();
+	}
+
+	/**
+	 * Writes the tree view of a node with the passed markers. Each line but the
+	 * first is indented by as many spaces as the horizontal marker is long.
+	 *
+	 * @param node
+	 *            The node to be written
+	 * @param out
+	 *            The destination of the text
+	 * @param times
+	 *            The number of vertical markers the first line starts with
+	 * @param hMarker
+	 *            The string marker connecting a node to its line
+	 * @param vMarker
+	 *            The string marker connecting the lines vertically
+	 * @throws IOException
+	 *             If the destination fails
+	 */
+	static void writeTree(MorphNode node, Appendable out, int times, String hMarker, String vMarker)
+			throws IOException {
+
+		writePipes(out, times, vMarker);
+		out.append(hMarker).append(node.getText()).append(LEFT_BRACE).append(node.getType().name())
+				.append(RIGHT_BRACE);
+
+		MorphNode son = node.getSon();
+		if (son == null) {
+			return;
+		}
+
+		int indentation = hMarker.length();
+		times++;
+
+		newLine(out, indentation);
+		writeTree(son, out, times, hMarker, vMarker);
+
+		newLine(out, indentation);
+		writePipes(out, times, vMarker);
+		out.append(vMarker);
+
+		newLine(out, indentation);
+		MorphNode daughter = node.getDaughter();
+		if (daughter != null) {
+			writeTree(daughter, out, times, hMarker, vMarker);
+		}
+	}
+
+	private static void writePipes(Appendable out, int times, String vMarker) throws IOException {
+		for (int i = 0; i < times; i++) {
+			out.append(vMarker).append(' ');
+		}
+	}
+
+	private static void newLine(Appendable out, int indentation) throws IOException {
+		out.append(NL);
+		for (int i = 0; i < indentation; i++) {
+			out.append(' ');
+		}
+	}
+
+	/**
+	 * Writes a string as a JSON string literal, quotes included
+	 *
+	 * @param out
+	 *            The destination of the literal
+	 * @param s
+	 *            The string to be written
+	 * @throws IOException
+	 *             If the destination fails
+	 */
+	static void writeJsonString(Appendable out, CharSequence s) throws IOException {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+			} else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+}
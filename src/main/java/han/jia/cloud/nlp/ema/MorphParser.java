@@ -1,7 +1,13 @@
 package han.jia.cloud.nlp.ema;
 
 import static han.jia.cloud.nlp.util.Constants.*;
-import static han.jia.cloud.nlp.util.StringUtil.crudeRootSuffix;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.CONSONANT_Y;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.ED_ER_EST_ING;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.ES;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.S;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.VOWEL_CONSONANT_CONSONANT;
+import static han.jia.cloud.nlp.ema.InflectionEndingTrie.has;
+import static han.jia.cloud.nlp.util.StringUtil.cutWhenEndsWithErEdEstIng;
 import static han.jia.cloud.nlp.util.StringUtil.endWithListElement;
 import static han.jia.cloud.nlp.util.StringUtil.findStemFromRight;
 import static han.jia.cloud.nlp.util.StringUtil.splitEnding;
@@ -9,45 +15,221 @@ import static han.jia.cloud.nlp.util.StringUtil.splitFromRight;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import han.jia.cloud.nlp.domain.Inflected;
 import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.enums.ParseStage;
 import han.jia.cloud.nlp.enums.QuasiIrregular;
+import han.jia.cloud.nlp.enums.QuasiIrregularMatcher;
 import han.jia.cloud.nlp.enums.Singleton;
 import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.util.CacheStats;
 import han.jia.cloud.nlp.util.Dictionary;
-import han.jia.cloud.nlp.util.StringUtil;
+import han.jia.cloud.nlp.util.LookupCache;
+import han.jia.cloud.nlp.util.SegmentedLruCache;
+import han.jia.cloud.nlp.util.StemSplit;
 
 /**
  * The tool to parse an English word.
  * 
+ * <p>
+ * An instance is thread-safe and reentrant: the state of a single parse is
+ * kept in a {@code ParseContext} passed down the recursion, and the caches
+ * shared by all parses are thread-safe. One instance can therefore serve any
+ * number of threads.
+ * 
+ * <p>
+ * The caches are bounded, so that open-vocabulary input cannot exhaust the
+ * heap. Their policy can be replaced by passing a
+ * {@code LookupCache.Factory} to the constructor.
+ * 
  * @author Jiayun Han
  *
  */
 public class MorphParser {
 
 	private static final int MIN_OKs = 1;
-	// for caching purpose
-	private Map<String, MorphNode> wordCache = new HashMap<String, MorphNode>();
-	private Map<String, String[]> stemSuffixMap = new HashMap<String, String[]>();
-	private Map<String, String[]> prefixStemMap = new HashMap<String, String[]>();
 
-	// used to catch cyclicity
-	private String wordBeingParsed;
+	// the default maximum number of entries of each cache
+	static final int DEFAULT_CACHE_SIZE = 200_000;
+
+	// stands for a cached failure to split, as the caches reject nulls
+	private static final String[] NO_SPLIT = new String[0];
 
-	// The root of the word being parsed
-	private String wordRoot;
+	// the number of word types below which a batch is not split any further
+	private static final int BATCH_THRESHOLD = 64;
 
-	private boolean isFirstTime;
+	// for caching purpose
+	private final LookupCache<String, MorphNode> wordCache;
+	private final LookupCache<String, String[]> stemSuffixMap;
+	private final LookupCache<String, String[]> prefixStemMap;
 
 	private final Dictionary dictionary;
 
+	// the analyses of the known words, or null
+	private final PrecomputedAnalyses analyses;
+	private final LongAdder precomputedHits = new LongAdder();
+	private final LongAdder precomputedMisses = new LongAdder();
+
+	// null while metrics are disabled
+	private volatile ParserMetrics metrics;
+
+	/**
+	 * Creates a parser whose caches are bounded to a default size and never
+	 * expire
+	 * 
+	 * @param wordService
+	 *            The service used to build the dictionary, if not built yet
+	 */
 	public MorphParser(WordService wordService) {
-		dictionary = Singleton.INSTANCE.getDictionary(wordService);
+		this(wordService, SegmentedLruCache.factory(DEFAULT_CACHE_SIZE, 0, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Creates a parser using the caches created by the passed factory
+	 * 
+	 * @param wordService
+	 *            The service used to build the dictionary, if not built yet
+	 * @param cacheFactory
+	 *            The factory of the word, stem-suffix and prefix-stem caches
+	 */
+	public MorphParser(WordService wordService, LookupCache.Factory cacheFactory) {
+		this(Singleton.INSTANCE.getDictionary(wordService), cacheFactory);
+	}
+
+	/**
+	 * Creates a parser using an already built dictionary, e.g. one loaded from
+	 * a snapshot, with caches bounded to a default size
+	 * 
+	 * @param dictionary
+	 *            The dictionary to parse words against
+	 * 
+	 * @see han.jia.cloud.nlp.util.DictionarySnapshot
+	 */
+	public MorphParser(Dictionary dictionary) {
+		this(dictionary, SegmentedLruCache.factory(DEFAULT_CACHE_SIZE, 0, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Creates a parser using an already built dictionary and the caches
+	 * created by the passed factory
+	 * 
+	 * @param dictionary
+	 *            The dictionary to parse words against
+	 * @param cacheFactory
+	 *            The factory of the word, stem-suffix and prefix-stem caches
+	 */
+	public MorphParser(Dictionary dictionary, LookupCache.Factory cacheFactory) {
+		this(dictionary, cacheFactory, null);
+	}
+
+	/**
+	 * Creates a parser answering the words of the passed analyses with a
+	 * single lookup, and parsing the other words against the dictionary
+	 * 
+	 * @param dictionary
+	 *            The dictionary to parse words against
+	 * @param cacheFactory
+	 *            The factory of the word, stem-suffix and prefix-stem caches
+	 * @param analyses
+	 *            The analyses of the known words, computed with the same
+	 *            dictionary, or null
+	 * 
+	 * @see PrecomputedAnalyses
+	 */
+	public MorphParser(Dictionary dictionary, LookupCache.Factory cacheFactory, PrecomputedAnalyses analyses) {
+		this.dictionary = dictionary;
+		this.analyses = analyses;
+		wordCache = cacheFactory.newCache("word");
+		stemSuffixMap = cacheFactory.newCache("stemSuffix");
+		prefixStemMap = cacheFactory.newCache("prefixStem");
+	}
+
+	Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Returns the counters of the caches of this parser, to help sizing them
+	 * 
+	 * @return The statistics of the word, stem-suffix and prefix-stem caches,
+	 *         keyed by the names of the caches, preceded by those of the
+	 *         precomputed analyses under "precomputed" if there are any; the
+	 *         word cache only counts the words the analyses miss
+	 */
+	public Map<String, CacheStats> getCacheStats() {
+		Map<String, CacheStats> stats = new LinkedHashMap<>();
+		if (analyses != null) {
+			stats.put("precomputed",
+					new CacheStats(precomputedHits.sum(), precomputedMisses.sum(), 0, analyses.size()));
+		}
+		stats.put("word", wordCache.stats());
+		stats.put("stemSuffix", stemSuffixMap.stats());
+		stats.put("prefixStem", prefixStemMap.stats());
+		return stats;
+	}
+
+	/**
+	 * Returns the words whose analyses are the most worth keeping in the cache
+	 * 
+	 * @param limit
+	 *            The maximum number of words to be returned
+	 * @return Up to limit words, the hottest first
+	 */
+	public List<String> getHotWords(int limit) {
+		return wordCache.hotKeys(limit);
+	}
+
+	/**
+	 * Starts recording the metrics of this parser, if not started yet
+	 * 
+	 * @return The metrics being recorded
+	 */
+	public synchronized ParserMetrics enableMetrics() {
+		if (metrics == null) {
+			metrics = new ParserMetrics(this::getCacheStats);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Goes on recording the metrics of another parser, e.g. the previous
+	 * version of a {@code ReloadableParser}, so that whoever holds them keeps
+	 * seeing the parses. Their cache statistics become those of this parser.
+	 */
+	synchronized void enableMetrics(ParserMetrics metrics) {
+		metrics.setCacheStats(this::getCacheStats);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Stops recording the metrics of this parser. The metrics recorded so far
+	 * are kept by whoever holds them.
+	 */
+	public synchronized void disableMetrics() {
+		metrics = null;
+	}
+
+	/**
+	 * Returns the metrics being recorded
+	 * 
+	 * @return The metrics, or null if disabled
+	 */
+	public ParserMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
@@ -61,27 +243,183 @@ public class MorphParser {
 	 */
 	public MorphNode parse(String text) {
 
-		if (wordCache.containsKey(text)) {
-			return wordCache.get(text);
+		if (analyses != null) {
+			MorphNode known = analyses.get(text);
+			if (known != null) {
+				precomputedHits.increment();
+				return known;
+			}
+			precomputedMisses.increment();
+		}
+
+		MorphNode cached = wordCache.get(text);
+		if (cached != null) {
+			return cached.getType() == MorphType.Word ? cached : markRoots(cached.withType(MorphType.Word));
 		}
 
 		String lexicon = text.trim().split(SPACE)[0];
 
-		isFirstTime = true;
-		wordBeingParsed = lexicon;
+		ParserMetrics metrics = this.metrics;
+		ParseContext context = new ParseContext(lexicon, metrics);
+		long start = context.startStage();
 
-		trySetWordRoot(lexicon, true);
-		MorphNode node = parseAux(lexicon, MorphType.Word, true);
+		trySetWordRoot(context, lexicon, true);
+		MorphNode node = parseAux(context, lexicon, MorphType.Word, true);
 
-		markRoots(node);
+		node = markRoots(node);
 		wordCache.put(text, node);
 
+		if (metrics != null) {
+			metrics.recordWord(lexicon, System.nanoTime() - start, context.maxDepth, context.candidates);
+		}
+
 		return node;
 	}
 
+	/**
+	 * Parses a word as it is written in running text. The word is parsed as
+	 * written when the dictionary knows it or it splits, as "British" does
+	 * into "Brit" and "ish", and in lower case otherwise, as a capitalized
+	 * word at the start of a sentence is.
+	 * 
+	 * @param word
+	 *            The word as written
+	 * 
+	 * @return The result of parsing the word, represented as a
+	 *         {@code MorphNode} object
+	 */
+	public MorphNode parseAsWritten(String word) {
+
+		MorphNode node = parse(word);
+		String lowerCase = word.toLowerCase(Locale.ROOT);
+		if (lowerCase.equals(word) || node.getSon() != null || dictionary.isWord(word)) {
+			return node;
+		}
+		return parse(lowerCase);
+	}
+
+	/**
+	 * Parses a batch of lexicons on the common fork-join pool
+	 * 
+	 * @param texts
+	 *            The texts to be parsed
+	 * 
+	 * @return The results of parsing the texts, in the order of the texts
+	 * 
+	 * @see #parseAll(Collection, ForkJoinPool)
+	 */
+	public List<MorphNode> parseAll(Collection<String> texts) {
+		return parseAll(texts, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parses a stream of lexicons on the common fork-join pool. The stream is
+	 * consumed entirely before the results are returned.
+	 * 
+	 * @param texts
+	 *            The texts to be parsed
+	 * 
+	 * @return The results of parsing the texts, in the order of the texts
+	 * 
+	 * @see #parseAll(Collection, ForkJoinPool)
+	 */
+	public List<MorphNode> parseAll(Stream<String> texts) {
+		return parseAll(texts.collect(Collectors.toList()), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parses a batch of lexicons on the passed fork-join pool.
+	 * 
+	 * <p>
+	 * The texts are first collapsed to their distinct types, only the types
+	 * are parsed, in parallel, and their results are then expanded back to the
+	 * positions of the texts. The cost therefore depends on the number of
+	 * distinct texts rather than on the number of texts; a text occurring
+	 * many times gets the same {@code MorphNode} instance at each position.
+	 * 
+	 * <p>
+	 * As with concurrent calls of {@link #parse(String)}, the order in which
+	 * the types are parsed is not fixed. A cached part of a word takes the
+	 * type it is asked for, but its split is the one first found, so for a
+	 * few words the result may differ in such details from a sequential run.
+	 * 
+	 * @param texts
+	 *            The texts to be parsed
+	 * @param pool
+	 *            The pool to parse the distinct texts on
+	 * 
+	 * @return The results of parsing the texts, in the order of the texts
+	 */
+	public List<MorphNode> parseAll(Collection<String> texts, ForkJoinPool pool) {
+
+		if (texts.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		Map<String, Integer> typeIds = new HashMap<>();
+		List<String> types = new ArrayList<>();
+		int[] tokenTypes = new int[texts.size()];
+
+		int i = 0;
+		for (String text : texts) {
+			Integer typeId = typeIds.get(text);
+			if (typeId == null) {
+				typeId = types.size();
+				typeIds.put(text, typeId);
+				types.add(text);
+			}
+			tokenTypes[i++] = typeId;
+		}
+
+		MorphNode[] typeNodes = new MorphNode[types.size()];
+		pool.invoke(new BatchParse(types, typeNodes, 0, types.size()));
+
+		MorphNode[] nodes = new MorphNode[tokenTypes.length];
+		for (i = 0; i < nodes.length; i++) {
+			nodes[i] = typeNodes[tokenTypes[i]];
+		}
+		return Arrays.asList(nodes);
+	}
+
+	/**
+	 * Parses a range of word types, splitting it in halves until it is small
+	 * enough to be parsed by a single thread.
+	 */
+	private class BatchParse extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> types;
+		private final MorphNode[] results;
+		private final int from;
+		private final int to;
+
+		private BatchParse(List<String> types, MorphNode[] results, int from, int to) {
+			this.types = types;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					results[i] = parse(types.get(i));
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BatchParse(types, results, from, middle), new BatchParse(types, results, middle, to));
+			}
+		}
+	}
+
 	/**
 	 * This is the helper method of the morph parser.
 	 * 
+	 * @param context
+	 *            The state of the parse in progress
+	 * 
 	 * @param lexicon
 	 *            The text to be parsed
 	 * 
@@ -98,345 +436,353 @@ public class MorphParser {
 	 * 
 	 * @see han.jia.cloud.nlp.enums.MorphType
 	 */
-	private MorphNode parseAux(String lexicon, MorphType type, boolean checkQuasiIrreg) {
+	private MorphNode parseAux(ParseContext context, String lexicon, MorphType type, boolean checkQuasiIrreg) {
+
+		if (++context.depth > context.maxDepth) {
+			context.maxDepth = context.depth;
+		}
 
-		if (wordCache.containsKey(lexicon)) {
-			return wordCache.get(lexicon);
+		MorphNode node = parseLexicon(context, lexicon, type, checkQuasiIrreg);
+
+		context.depth--;
+		return node;
+	}
+
+	private MorphNode parseLexicon(ParseContext context, String lexicon, MorphType type, boolean checkQuasiIrreg) {
+
+		// the cache is keyed on the lexicon alone, so a hit takes the type
+		// asked for, as a fresh parse would give it
+		MorphNode cached = wordCache.get(lexicon);
+		if (cached != null) {
+			return cached.getType() == type ? cached : markRoots(cached.withType(type));
 		}
 
 		MorphNode node = new MorphNode(lexicon, type);
-		if (dictionary.getUnsplittables().contains(lexicon)
-				|| (isFirstTime == false && wordBeingParsed != null && wordBeingParsed.equals(lexicon))) {
+		if (dictionary.isUnsplittable(lexicon)
+				|| (context.isFirstTime == false && context.wordBeingParsed != null && context.wordBeingParsed.equals(lexicon))) {
+			node = markRoots(node);
 			wordCache.put(lexicon, node);
 			return node;
 		}
 
-		isFirstTime = false;
+		if (context.lexiconsInProgress.contains(lexicon)) {
+			return markRoots(node);
+		}
+
+		context.isFirstTime = false;
+		context.lexiconsInProgress.add(lexicon);
 
-		node = deInflect(lexicon, type, checkQuasiIrreg);
+		long start = context.startStage();
+		node = deInflect(context, lexicon, type, checkQuasiIrreg);
+		context.endStage(ParseStage.DE_INFLECT, start);
 
-		bootstrap(node);
+		start = context.startStage();
+		node = bootstrap(context, node);
+		context.endStage(ParseStage.BOOTSTRAP, start);
 
 		if (node.getSon() == null && node.getDaughter() == null) {
-			MorphNode node2 = lastResort(node, lexicon, type);
+			start = context.startStage();
+			MorphNode node2 = lastResort(context, node, lexicon, type);
+			context.endStage(ParseStage.LAST_RESORT, start);
 			if (node2 != null) {
+				node2 = markRoots(node2);
 				wordCache.put(lexicon, node2);
+				context.lexiconsInProgress.remove(lexicon);
 				return node2;
 			}
 		}
 
-		markRoots(node);
-		int oks = node.validate(dictionary);
+		node = markRoots(node);
+		int oks = validate(context, node);
 		if (oks == 0) {
 			if (node.getSon() != null) {
-				node = new MorphNode(lexicon, type);
+				node = markRoots(new MorphNode(lexicon, type));
 			}
 		}
 
 		wordCache.put(lexicon, node);
+		context.lexiconsInProgress.remove(lexicon);
 		return node;
 	}
 
-	private MorphNode deInflect(String word, MorphType type, boolean checkQuasiIrreg) {
+	private MorphNode deInflect(ParseContext context, String word, MorphType type, boolean checkQuasiIrreg) {
 
 		if (word == null || word.isEmpty()) {
 			return null;
 		}
 
 		MorphNode node = new MorphNode(word, type);
-		if (dictionary.getUnsplittables().contains(word)) {
+		if (dictionary.isUnsplittable(word)) {
 			return node;
 		}
 
-		if (dictionary.getMorphNodeMap().containsKey(word)) {
-			return dictionary.getMorphNodeMap().get(word).type(type);
+		MorphNode known = dictionary.findMorphNode(word);
+		if (known != null) {
+			return known.withType(type);
 		}
 
-		boolean done = checkInflection(word, node);
+		MorphNode inflected = checkInflection(context, word, type);
 
-		if (!done) {
+		if (inflected == null) {
 			if (checkQuasiIrreg) {
-				done = checkQuasiIrregulars(word, node);
+				inflected = checkQuasiIrregulars(context, word, type);
 			}
 
-			if (!done) {
-				done = checkCieEnding(word, node);
-				if (!done) {
-					done = checkVccEnding(word, node);
-					if (!done) {
-						done = checkEdErEstIng(word, node);
-						if (!done) {
-							done = checkEndingS(word, node);
-						}
-					}
-				}
+			if (inflected == null) {
+				inflected = checkEndings(context, word, type);
 			}
 		}
 
-		return node;
+		return inflected == null ? node : inflected;
 	}
 
-	private boolean checkInflection(String word, MorphNode node) {
-		boolean done = false;
-		if (dictionary.getInflectionTable().containsKey(word)) {
-			Inflected inflected = dictionary.getInflectionTable().get(word);
-			done = checkInflectionAndSet(inflected.getBase(), inflected.getInflection(), node);
+	private MorphNode checkInflection(ParseContext context, String word, MorphType type) {
+		MorphNode split = null;
+		Inflected inflected = dictionary.findInflected(word);
+		if (inflected != null) {
+			split = checkInflectionAndSplit(context, word, type, inflected.getBase(), inflected.getInflection());
 		}
-		return done;
+		return split;
 	}
 
-	private boolean checkQuasiIrregulars(String word, MorphNode node) {
+	private MorphNode checkQuasiIrregulars(ParseContext context, String word, MorphType type) {
 
-		return Arrays.stream(QuasiIrregular.values()).filter(q -> q.matches(word)).map(q -> checkQuasi(q, node))
-				.filter(e -> e == true).findAny().orElse(false);
+		// the matched rules are tried in their declaration order
+		QuasiIrregularMatcher matcher = QuasiIrregularMatcher.INSTANCE;
+		for (long matched = matcher.match(word); matched != 0L; matched &= matched - 1) {
+			QuasiIrregular irreg = matcher.rule(Long.numberOfTrailingZeros(matched));
+			MorphNode split = checkQuasi(context, irreg, word, type);
+			if (split != null) {
+				return split;
+			}
+		}
+		return null;
 	}
 
-	private boolean checkQuasi(QuasiIrregular irreg, MorphNode node) {
+	private MorphNode checkQuasi(ParseContext context, QuasiIrregular irreg, String word, MorphType type) {
 
-		boolean done = false;
-		Matcher matcher = irreg.getPattern().matcher(node.getText());
-		if (matcher.matches()) {
-			String head = matcher.group(1);
-			String stem = head + irreg.getAddOn();
-			String inflection = irreg.getInflection();
-			done = checkInflectionAndSet(stem, inflection, node);
+		int head = irreg.headLength(word);
+		if (!dictionary.isWord(word, 0, head, irreg.getAddOn())) {
+			return null;
 		}
 
-		return done;
+		String stem = word.substring(0, head).concat(irreg.getAddOn());
+		return split(context, word, type, stem, irreg.getInflection());
 	}
 
-	private boolean checkCieEnding(String word, MorphNode node) {
+	// one scan of the word tells which of the ending checks can apply, which
+	// are then tried in order
+	private MorphNode checkEndings(ParseContext context, String word, MorphType type) {
 
-		boolean done = false;
-
-		if (endWithListElement(word, dictionary.getcYs()) != -1) {
-
-			// word ending with consonant + ie + others, e.g. cities, happier
-			String[] headTail = crudeRootSuffix(word, dictionary.getcYs());
-
-			if (headTail != null) {
-				String stemHead = headTail[0];
-				String roughTail = headTail[1];
-
-				headTail = splitEnding(roughTail);
-
-				String stemCarriedOver = headTail[0];
-				String stem = stemHead + stemCarriedOver;
-				String inflection = headTail[1];
+		int[] cuts = context.endingCuts;
+		int categories = dictionary.getInflectionEndingTrie().classify(word, cuts);
+		if (categories == 0) {
+			return null;
+		}
 
-				done = checkInflectionAndSet(stem, inflection, node);
-			}
+		MorphNode inflected = null;
+		if (has(categories, CONSONANT_Y)) {
+			inflected = checkCieEnding(context, word, type, cuts[CONSONANT_Y]);
 		}
-		return done;
+		if (inflected == null && has(categories, VOWEL_CONSONANT_CONSONANT)) {
+			inflected = checkVccEnding(context, word, type, cuts[VOWEL_CONSONANT_CONSONANT]);
+		}
+		if (inflected == null && has(categories, ED_ER_EST_ING)) {
+			inflected = checkEdErEstIng(context, word, type);
+		}
+		if (inflected == null && has(categories, S)) {
+			inflected = checkEndingS(context, word, type, cuts[ES]);
+		}
+		return inflected;
 	}
 
-	private boolean checkVccEnding(String str, MorphNode node) {
-		boolean done = false;
-		if (endWithListElement(str, dictionary.getvCCs()) != -1) {
-
-			String[] headTail = crudeRootSuffix(str, dictionary.getvCCs());
-			if (headTail != null) {
-				String stemHead = headTail[0];
-				String roughTail = headTail[1];
+	private MorphNode checkCieEnding(ParseContext context, String word, MorphType type, int cut) {
 
-				// otter -> [ot, er]
-				headTail = splitEnding(roughTail);
+		// word ending with consonant + ie + others, e.g. cities, happier
+		splitEnding(word, cut, context.split);
+		return checkInflectionAndSplit(context, type, context.split);
+	}
 
-				String stemCarriedover = headTail[0];
-				String stem = stemHead + stemCarriedover; // h + ot = hot
-				String inflection = headTail[1]; // er
-				done = checkInflectionAndSet(stem, inflection, node);
+	private MorphNode checkVccEnding(ParseContext context, String word, MorphType type, int cut) {
 
-			}
-		}
-		return done;
+		// hotter -> [hot, er]
+		splitEnding(word, cut, context.split);
+		return checkInflectionAndSplit(context, type, context.split);
 	}
 
-	private boolean checkEdErEstIng(String str, MorphNode node) {
-		boolean done = false;
-		if (endWithListElement(str, dictionary.getEdErEstIng()) != -1) {
-			String[] stemInflection = StringUtil.cutWhenEndsWithErEdEstIng(str, dictionary.getWords());
-			String stem = stemInflection[0];
-			String inflection = stemInflection[1];
-			done = checkInflectionAndSet(stem, inflection, node);
-		}
-		return done;
+	private MorphNode checkEdErEstIng(ParseContext context, String word, MorphType type) {
+		cutWhenEndsWithErEdEstIng(word, dictionary::isWord, context.split);
+		return checkInflectionAndSplit(context, type, context.split);
 	}
 
-	private boolean checkEndingS(String word, MorphNode node) {
-		boolean done = false;
-		if (word.endsWith(s)) {
-			done = checkInflectionAndSet(word.substring(0, word.length() - 1), s, node);
-			if (!done) {
-				if (endWithListElement(word, dictionary.getEsEnding()) != -1) {
-					String[] headTail = crudeRootSuffix(word, dictionary.getEsEnding());
-					String stemHead = headTail[0];
-					String roughTail = headTail[1];
+	// the word ends with 's'; esCut is where its 'es' ending starts, or -1
+	private MorphNode checkEndingS(ParseContext context, String word, MorphType type, int esCut) {
 
-					headTail = splitEnding(roughTail);
-					String stemCarriedover = headTail[0];
-					String inflection = headTail[1];
-					String stem = stemHead + stemCarriedover;
-
-					done = checkInflectionAndSet(stem, inflection, node);
-				}
-			}
+		MorphNode split = null;
+		if (splitFromRight(word, 1, EMPTY_STR, context.split)) {
+			split = checkInflectionAndSplit(context, type, context.split);
+		}
+		if (split == null && esCut != -1) {
+			splitEnding(word, esCut, context.split);
+			split = checkInflectionAndSplit(context, type, context.split);
 		}
-		return done;
+		return split;
 	}
 
-	private boolean checkInflectionAndSet(String stem, String inflection, MorphNode node) {
-		boolean done = false;
-		if (dictionary.getWords().contains(stem)) {
-
-			done = true;
-			trySetWordRoot(stem, false);
+	private MorphNode checkInflectionAndSplit(ParseContext context, String word, MorphType type, String stem,
+			String inflection) {
+		return dictionary.isWord(stem) ? split(context, word, type, stem, inflection) : null;
+	}
 
-			node.setSon(new MorphNode(stem, MorphType.Stem));
-			node.setDaughter(new MorphNode(inflection, MorphType.Inflection));
-		} else {
-			node.setSon(null);
-			node.setDaughter(null);
+	// checks the stem of the split in place, creating the strings only if it
+	// is a word
+	private MorphNode checkInflectionAndSplit(ParseContext context, MorphType type, StemSplit candidate) {
+		String word = candidate.getWord();
+		if (!dictionary.isWord(word, 0, candidate.getStemEnd(), candidate.getStemExtra())) {
+			return null;
 		}
-		return done;
+
+		return split(context, word, type, candidate.stem(), candidate.inflection());
 	}
 
-	private String[] toPrefixStem(String word) {
+	// splits the word into a stem known to be a word and an inflection
+	private MorphNode split(ParseContext context, String word, MorphType type, String stem, String inflection) {
+		trySetWordRoot(context, stem, false);
+		return new MorphNode(word, type, new MorphNode(stem, MorphType.Stem),
+				new MorphNode(inflection, MorphType.Inflection));
+	}
+
+	private String[] toPrefixStem(ParseContext context, String word) {
 
 		if (word == null) {
 			return null;
 		}
 
-		if (prefixStemMap.containsKey(word)) {
-			return prefixStemMap.get(word);
+		String[] cached = prefixStemMap.get(word);
+		if (cached != null) {
+			return cached == NO_SPLIT ? null : cached;
 		}
 
 		String[] pair = null;
 
 		// min-length = 4, 'abed'
-		if (word.length() >= 4 && !dictionary.getUnsplittables().contains(word)) {
+		if (word.length() >= 4 && !dictionary.isUnsplittable(word)) {
 
 			int maxOks = MIN_OKs;
-			for (String prefix : dictionary.getPrefixes()) {
+			int gap = word.contains(HYPHEN) ? 1 : 0;
 
-				if (word.startsWith(prefix)) {
-					int cutIndexFromLeft = word.contains(HYPHEN) ? prefix.length() + 1 : prefix.length();
-					String stem = word.substring(cutIndexFromLeft);
+			// only the prefixes whose assimilation rules accept the stem
+			for (String prefix : dictionary.getPrefixTrie().findPrefixes(word, gap)) {
+				String stem = word.substring(prefix.length() + gap);
 
-					if (stem.length() < 3) {
-						continue;
-					} else if (prefix.equals(ir)) {
-						if (!stem.startsWith(r)) {
-							continue;
-						}
-					} else if (prefix.equals(il)) {
-						if (!stem.startsWith(l)) {
-							continue;
-						}
-					} else if (prefix.equals(im)) {
-						if (!stem.startsWith(m) && !stem.startsWith(p) && !stem.startsWith(b)) {
-							continue;
-						}
-					} else if (prefix.equals(in)) {
-						if (stem.startsWith(m) || stem.startsWith(p) || stem.startsWith(b) || stem.startsWith(l)
-								|| stem.startsWith(r)) {
-							continue;
-						}
-					}
+				if (stem.length() < 3) {
+					continue;
+				}
 
-					boolean done = false;
-					String stemRoot = getRoot(stem);
-					if (wordRoot != null && stemRoot != null && stemRoot.equals(wordRoot)) {
-						done = true;
-					} else {
-						if (stemRoot != null) {
-							String theWordRoot = getRoot(word);
-							if (theWordRoot != null && theWordRoot.equals(stemRoot)) {
-								done = true;
-							}
+				context.candidates++;
+				boolean done = false;
+				String stemRoot = getRoot(stem);
+				if (context.wordRoot != null && stemRoot != null && stemRoot.equals(context.wordRoot)) {
+					done = true;
+				} else {
+					if (stemRoot != null) {
+						String theWordRoot = getRoot(word);
+						if (theWordRoot != null && theWordRoot.equals(stemRoot)) {
+							done = true;
 						}
 					}
+				}
 
-					if (done) {
-						pair = new String[] { prefix, stem };
-						wordRoot = stemRoot;
-						break;
-					}
+				if (done) {
+					pair = new String[] { prefix, stem };
+					context.wordRoot = stemRoot;
+					break;
+				}
 
-					MorphNode morphNode = parseAux(stem, MorphType.Stem, true);
-					markRoots(morphNode);
-					int oks = morphNode.validate(dictionary);
-					if (oks > maxOks) {
-						maxOks = oks;
-						pair = new String[] { prefix, stem };
-					}
+				MorphNode morphNode = parseAux(context, stem, MorphType.Stem, true);
+				int oks = validate(context, morphNode);
+				if (oks > maxOks) {
+					maxOks = oks;
+					pair = new String[] { prefix, stem };
 				}
 			}
 		}
 
-		prefixStemMap.put(word, pair);
+		prefixStemMap.put(word, pair == null ? NO_SPLIT : pair);
 		return pair;
 	}
 
-	private void bootstrap(MorphNode node) {
+	private int validate(ParseContext context, MorphNode node) {
+		long start = context.startStage();
+		int oks = node.validate(dictionary);
+		context.endStage(ParseStage.VALIDATE, start);
+		return oks;
+	}
+
+	private MorphNode bootstrap(ParseContext context, MorphNode node) {
 
 		if (node == null || (node.getType() != MorphType.Word && node.getType() != MorphType.Stem)
-				|| dictionary.getUnsplittables().contains(node.getText())) {
-			return;
+				|| dictionary.isUnsplittable(node.getText())) {
+			return node;
 		}
 
 		if (node.getSon() == null && node.getDaughter() == null) {
-			String[] stemSuffix = toStemSuffix(node.getText());
+			long start = context.startStage();
+			String[] stemSuffix = toStemSuffix(context, node.getText());
+			context.endStage(ParseStage.TO_STEM_SUFFIX, start);
 
 			if (stemSuffix != null) {
-				trySetWordRoot(stemSuffix[0], false);
-				useSuffix(node, stemSuffix);
+				trySetWordRoot(context, stemSuffix[0], false);
+				return useSuffix(context, node, stemSuffix);
 			} else {
-				String[] prefixStem = toPrefixStem(node.getText());
+				start = context.startStage();
+				String[] prefixStem = toPrefixStem(context, node.getText());
+				context.endStage(ParseStage.TO_PREFIX_STEM, start);
 				if (prefixStem != null) {
-					trySetWordRoot(prefixStem[1], false);
-					usePrefix(node, prefixStem);
+					trySetWordRoot(context, prefixStem[1], false);
+					return usePrefix(context, node, prefixStem);
 				}
 			}
 
-		} else {
-			if (node.getSon() != null
-					&& (node.getSon().getType() == MorphType.Word || node.getSon().getType() == MorphType.Stem)) {
-				MorphNode newSon = parseAux(node.getSon().getText(), MorphType.Stem, false);
-				node.setSon(newSon);
-			}
+			return node;
+		}
 
-			if (node.getDaughter() != null && (node.getDaughter().getType() == MorphType.Word
-					|| node.getDaughter().getType() == MorphType.Stem)) {
-				MorphNode newDau = parseAux(node.getDaughter().getText(), MorphType.Stem, false);
-				node.setDaughter(newDau);
-			}
+		MorphNode son = node.getSon();
+		if (son != null && (son.getType() == MorphType.Word || son.getType() == MorphType.Stem)) {
+			son = parseAux(context, son.getText(), MorphType.Stem, false);
+		}
+
+		MorphNode dau = node.getDaughter();
+		if (dau != null && (dau.getType() == MorphType.Word || dau.getType() == MorphType.Stem)) {
+			dau = parseAux(context, dau.getText(), MorphType.Stem, false);
 		}
+
+		return node.withChildren(son, dau);
 	}
 
-	private MorphNode lastResort(MorphNode node, String lexicon, MorphType type) {
+	private MorphNode lastResort(ParseContext context, MorphNode node, String lexicon, MorphType type) {
 
-		List<String[]> stemInflPairs = simpleDeinflect(lexicon);
-		if (stemInflPairs != null && !stemInflPairs.isEmpty()) {
+		Deinflection deinflection = simpleDeinflect(lexicon);
+		if (deinflection == null) {
+			return null;
+		}
 
-			for (String[] stemInflPair : stemInflPairs) {
-				if (stemInflPair == null) {
-					continue;
-				}
+		for (int i = 0; i < deinflection.offsets.length; i++) {
+			int cut = lexicon.length() - deinflection.offsets[i];
+			if (cut <= 0) {
+				continue;
+			}
 
-				String stem = stemInflPair[0];
-				String infl = stemInflPair[1];
+			String stem = lexicon.substring(0, cut);
+			if (!deinflection.extras[i].isEmpty()) {
+				stem = stem.concat(deinflection.extras[i]);
+			}
 
-				MorphNode node2 = parseAux(stem, type, false);
+			MorphNode node2 = parseAux(context, stem, type, false);
 
-				if (node2 != null && node2.getSon() != null && node2.getDaughter() != null) {
-					MorphNode node3 = (MorphNode) node2.clone();
-					node3.setText(node.getText());
-					node2.downgrade();
-					node3.setSon(node2);
-					node3.setDaughter(new MorphNode(infl, MorphType.Inflection));
-					return node3;
-				}
+			if (node2 != null && node2.getSon() != null && node2.getDaughter() != null) {
+				return new MorphNode(node.getText(), node2.getType(), node2.downgrade(),
+						new MorphNode(lexicon.substring(cut), MorphType.Inflection));
 			}
 		}
 
@@ -450,165 +796,176 @@ public class MorphParser {
 	 * @param word
 	 * @return
 	 */
-	private String[] toStemSuffix(String word) {
+	private String[] toStemSuffix(ParseContext context, String word) {
 
 		if (word == null) {
 			return null;
 		}
 
-		if (stemSuffixMap.containsKey(word)) {
-			return stemSuffixMap.get(word);
+		String[] cached = stemSuffixMap.get(word);
+		if (cached != null) {
+			return cached == NO_SPLIT ? null : cached;
 		}
 
 		String[] pair = null;
 
 		// min-length = 3, as in 'icy'
-		if (word.length() >= 3 && !dictionary.getUnsplittables().contains(word)) {
+		if (word.length() >= 3 && !dictionary.isUnsplittable(word)) {
 
 			int maxOks = MIN_OKs;
-			outer: for (String ending : dictionary.getSuffixTable().keySet()) {
-
-				if (word.endsWith(ending)) {
-					List<SuffixObj> suffObjs = dictionary.getSuffixTable().get(ending);
+			outer: for (String ending : dictionary.getSuffixTrie().findEndings(word)) {
+				List<SuffixObj> suffObjs = dictionary.getSuffixTable().get(ending);
+
+				for (SuffixObj suffObj : suffObjs) {
+					int cutIndexFromRight = suffObj.getCutPosition();
+					String addon = suffObj.getAddon();
+					String stem = findStemFromRight(word, cutIndexFromRight, addon);
+					if (stem == null) {
+						continue;
+					}
 
-					for (SuffixObj suffObj : suffObjs) {
-						int cutIndexFromRight = suffObj.getCutPosition();
-						String addon = suffObj.getAddon();
-						String stem = findStemFromRight(word, cutIndexFromRight, addon);
-						if (stem == null) {
+					if (addon.equals(MARKER_1)) {
+						String tail = word.replace(stem, EMPTY_STR);
+						if (tail.isEmpty()) {
 							continue;
 						}
 
-						if (addon.equals(MARKER_1)) {
-							String tail = word.replace(stem, EMPTY_STR);
-							if (tail.isEmpty()) {
-								continue;
-							}
-
-							char cLast = stem.charAt(stem.length() - 1);
-							char cFirst = tail.charAt(0);
-							if (cLast != cFirst) {
-								continue;
-							}
+						char cLast = stem.charAt(stem.length() - 1);
+						char cFirst = tail.charAt(0);
+						if (cLast != cFirst) {
+							continue;
 						}
+					}
 
-						boolean done = false;
-						String stemRoot = getRoot(stem);
+					context.candidates++;
+					boolean done = false;
+					String stemRoot = getRoot(stem);
 
-						if ((dictionary.getWords().contains(stem) && dictionary.getStrongSuffixes().contains(ending))
-								|| (wordRoot != null && stemRoot != null && stemRoot.equals(wordRoot))) {
-							done = true;
-						} else {
-							if (stemRoot != null) {
-								String theWordRoot = getRoot(word);
-								if (theWordRoot != null && theWordRoot.equals(stemRoot)) {
-									done = true;
-								}
+					if ((dictionary.isWord(stem) && dictionary.isStrongSuffix(ending))
+							|| (context.wordRoot != null && stemRoot != null && stemRoot.equals(context.wordRoot))) {
+						done = true;
+					} else {
+						if (stemRoot != null) {
+							String theWordRoot = getRoot(word);
+							if (theWordRoot != null && theWordRoot.equals(stemRoot)) {
+								done = true;
 							}
 						}
+					}
 
-						if (done) {
-							pair = new String[] { stem, ending };
-							wordRoot = stemRoot;
-							break outer;
-						}
+					if (done) {
+						pair = new String[] { stem, ending };
+						context.wordRoot = stemRoot;
+						break outer;
+					}
 
-						MorphNode morphNode = parseAux(stem, MorphType.Stem, true);
-						markRoots(morphNode);
-						int oks = morphNode.validate(dictionary);
-						if (oks > maxOks) {
-							maxOks = oks;
-							pair = new String[] { stem, ending };
-						}
+					MorphNode morphNode = parseAux(context, stem, MorphType.Stem, true);
+					int oks = validate(context, morphNode);
+					if (oks > maxOks) {
+						maxOks = oks;
+						pair = new String[] { stem, ending };
 					}
 				}
 			}
 		}
 
-		stemSuffixMap.put(word, pair);
+		stemSuffixMap.put(word, pair == null ? NO_SPLIT : pair);
 		return pair;
 	}
 
-	private void useSuffix(MorphNode node, String[] stemSuffix) {
+	private MorphNode useSuffix(ParseContext context, MorphNode node, String[] stemSuffix) {
 
-		if (node != null && stemSuffix != null) {
-			String stem = stemSuffix[0];
-			String suffix = stemSuffix[1];
+		String stem = stemSuffix[0];
+		String suffix = stemSuffix[1];
 
-			node.setDaughter(new MorphNode(suffix, MorphType.Suffix));
-			MorphNode son = parseAux(stem, MorphType.Stem, false);
-			node.setSon(son);
-		}
+		MorphNode dau = new MorphNode(suffix, MorphType.Suffix);
+		MorphNode son = parseAux(context, stem, MorphType.Stem, false);
+		return node.withChildren(son, dau);
 	}
 
-	private void usePrefix(MorphNode node, String[] prefixStem) {
-		if (node != null && prefixStem != null) {
-			node.setSon(new MorphNode(prefixStem[0], MorphType.Prefix));
-			MorphNode dau = parseAux(prefixStem[1], MorphType.Stem, false);
-			node.setDaughter(dau);
-		}
+	private MorphNode usePrefix(ParseContext context, MorphNode node, String[] prefixStem) {
+		MorphNode son = new MorphNode(prefixStem[0], MorphType.Prefix);
+		MorphNode dau = parseAux(context, prefixStem[1], MorphType.Stem, false);
+		return node.withChildren(son, dau);
 	}
 
-	private List<String[]> simpleDeinflect(String word) {
-		if (word == null || word.length() < 4 || dictionary.getUnsplittables().contains(word)) {
+	private Deinflection simpleDeinflect(String word) {
+		if (word == null || word.length() < 4 || dictionary.isUnsplittable(word)) {
 			return null;
 		}
 
-		List<String[]> stemInflPairs = new ArrayList<String[]>();
-
 		if (word.length() >= 5 && word.endsWith(ies)) {
-			stemInflPairs.add(splitFromRight(word, 3, y));
+			return Deinflection.IES;
 		} else if (endWithListElement(word, dictionary.getEsEnding()) != -1) {
-			stemInflPairs.add(splitFromRight(word, 2));
+			return Deinflection.ES;
 		} else if (word.endsWith(s) && !word.endsWith(ss)) {
-			stemInflPairs.add(splitFromRight(word, 1));
+			return Deinflection.S;
 		} else if (word.length() >= 5 && word.endsWith(ves)) {
-			stemInflPairs.add(splitFromRight(word, 1));
-			stemInflPairs.add(splitFromRight(word, 3, fe));
+			return Deinflection.VES;
 		} else if (word.length() >= 5 && word.endsWith(er) || word.endsWith(ed)) {
-			stemInflPairs.add(splitFromRight(word, 1));
-			stemInflPairs.add(splitFromRight(word, 2));
-			stemInflPairs.add(splitFromRight(word, 3));
-			stemInflPairs.add(splitFromRight(word, 3, y));
+			return Deinflection.ER_ED;
 		} else if (word.length() >= 5 && word.endsWith(est)) {
-			stemInflPairs.add(splitFromRight(word, 2));
-			stemInflPairs.add(splitFromRight(word, 3));
-			stemInflPairs.add(splitFromRight(word, 4));
+			return Deinflection.EST;
 		} else if (word.length() >= 5 && word.endsWith(ing)) {
-			stemInflPairs.add(splitFromRight(word, 3));
-			stemInflPairs.add(splitFromRight(word, 3, e));
-			stemInflPairs.add(splitFromRight(word, 4));
+			return Deinflection.ING;
+		}
+		return Deinflection.NONE;
+	}
+
+	/**
+	 * The candidate stems tried by the last resort for an ending, in order:
+	 * the word cut at each offset from the right, plus the extra string
+	 */
+	private static final class Deinflection {
+
+		static final Deinflection IES = new Deinflection(new int[] { 3 }, y);
+		static final Deinflection ES = new Deinflection(new int[] { 2 }, EMPTY_STR);
+		static final Deinflection S = new Deinflection(new int[] { 1 }, EMPTY_STR);
+		static final Deinflection VES = new Deinflection(new int[] { 1, 3 }, EMPTY_STR, fe);
+		static final Deinflection ER_ED = new Deinflection(new int[] { 1, 2, 3, 3 }, EMPTY_STR, EMPTY_STR,
+				EMPTY_STR, y);
+		static final Deinflection EST = new Deinflection(new int[] { 2, 3, 4 }, EMPTY_STR, EMPTY_STR, EMPTY_STR);
+		static final Deinflection ING = new Deinflection(new int[] { 3, 3, 4 }, EMPTY_STR, e, EMPTY_STR);
+		static final Deinflection NONE = new Deinflection(new int[0]);
+
+		final int[] offsets;
+		final String[] extras;
+
+		private Deinflection(int[] offsets, String... extras) {
+			this.offsets = offsets;
+			this.extras = extras;
 		}
-		return stemInflPairs;
 	}
 
 	/**
-	 * Mars the root of the passed morph node.
+	 * Marks the root of the passed morph node.
 	 * 
 	 * <p>
 	 * A morph node has no root if it is an inflection, a prefix, or a suffix;
 	 * it may have one root, e.g exciting, or more than one root, e.g. bulldog.
 	 * 
 	 * <p>
-	 * This is a recursive method.
+	 * This is a recursive method. As morph nodes are immutable, the marked
+	 * node is a new one sharing all the sub-nodes that needed no marking, or
+	 * the passed node itself if nothing needed marking.
 	 * 
 	 * @param node
 	 *            The morph node whose root(s) to be marked out
+	 * 
+	 * @return The morph node with its root(s) marked out
 	 */
-	private void markRoots(MorphNode node) {
+	private MorphNode markRoots(MorphNode node) {
 
 		if (node == null || node.getType() == MorphType.Inflection || node.getType() == MorphType.Prefix
 				|| node.getType() == MorphType.Suffix) {
-			return;
+			return node;
 		}
 
 		if (node.getSon() == null && node.getDaughter() == null) {
-			node.setType(MorphType.Root);
-			return;
+			return node.withType(MorphType.Root);
 		}
 
-		markRoots(node.getSon());
-		markRoots(node.getDaughter());
+		return node.withChildren(markRoots(node.getSon()), markRoots(node.getDaughter()));
 	}
 
 	/**
@@ -619,14 +976,16 @@ public class MorphParser {
 	 * Depending on whether the word exists in the derivative dictionary, the
 	 * root of this word may or may not be set at the end of this operation.
 	 * 
+	 * @param context
+	 *            The state of the parse in progress
 	 * @param word
 	 *            The word whose root to be set
 	 * @param forceReset
 	 *            true to try this operation; false to return with no operation.
 	 */
-	private void trySetWordRoot(String word, boolean forceReset) {
-		if (forceReset || wordRoot == null) {
-			wordRoot = getRoot(word);
+	private void trySetWordRoot(ParseContext context, String word, boolean forceReset) {
+		if (forceReset || context.wordRoot == null) {
+			context.wordRoot = getRoot(word);
 		}
 	}
 
@@ -641,12 +1000,6 @@ public class MorphParser {
 	 *         word has no stem or the root otherwise.
 	 */
 	private String getRoot(String word) {
-		String root = null;
-		GraphNode graphNode = dictionary.getDerivativeMap().get(word);
-		if (graphNode != null) {
-			root = graphNode.findRoot();
-		}
-
-		return root;
+		return dictionary.findRoot(word);
 	}
 }
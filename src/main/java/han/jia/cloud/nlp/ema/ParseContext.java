@@ -0,0 +1,64 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import han.jia.cloud.nlp.enums.ParseStage;
+import han.jia.cloud.nlp.util.StemSplit;
+
+/**
+ * The state of a single parse, passed down the recursion of
+ * {@code MorphParser} so that concurrent parses do not interfere with each
+ * other.
+ * 
+ * @author Jiayun Han
+ *
+ */
+class ParseContext {
+
+	// used to catch cyclicity
+	final String wordBeingParsed;
+
+	// The root of the word being parsed
+	String wordRoot;
+
+	boolean isFirstTime = true;
+
+	// the lexicons whose parses enclose the current one, to catch cyclicity
+	// below the word itself, such as news -> news + irreg
+	final List<String> lexiconsInProgress = new ArrayList<>(4);
+
+	// reused by the inflection checks, which never nest
+	final StemSplit split = new StemSplit();
+
+	// the cuts of the inflection endings of the word being de-inflected
+	final int[] endingCuts = new int[InflectionEndingTrie.CATEGORIES];
+
+	// the metrics to record into, or null when disabled
+	final ParserMetrics metrics;
+
+	// the current and the deepest nesting of parseAux
+	int depth;
+	int maxDepth;
+
+	// the number of candidate stems tried
+	int candidates;
+
+	ParseContext(String wordBeingParsed, ParserMetrics metrics) {
+		this.wordBeingParsed = wordBeingParsed;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The start time of a stage, or 0 when metrics are disabled
+	 */
+	long startStage() {
+		return metrics == null ? 0L : System.nanoTime();
+	}
+
+	void endStage(ParseStage stage, long start) {
+		if (metrics != null) {
+			metrics.record(stage, System.nanoTime() - start);
+		}
+	}
+}
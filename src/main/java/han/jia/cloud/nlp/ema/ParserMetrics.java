@@ -0,0 +1,272 @@
+package han.jia.cloud.nlp.ema;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import han.jia.cloud.nlp.enums.ParseStage;
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.Histogram;
+
+/**
+ * The metrics of a {@code MorphParser}: the latency of each stage of a parse,
+ * the recursion depth and the number of candidate stems tried per word, the
+ * hit rates of the caches and the slowest words.
+ *
+ * <p>
+ * It is created by {@link MorphParser#enableMetrics()}. While metrics are
+ * disabled, a parse only pays for a null check per stage. The metrics can be
+ * read through the getters, as a whole with {@link #snapshot()}, or through JMX
+ * once {@link #registerMBean(String)} is called.
+ *
+ * <p>
+ * An instance is thread-safe.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class ParserMetrics implements ParserMetricsMXBean {
+
+	// the number of slowest words kept
+	private static final int SLOWEST_WORDS = 10;
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private final Map<ParseStage, Histogram> stages = new EnumMap<>(ParseStage.class);
+	private final Histogram depths = new Histogram();
+	private final Histogram candidates = new Histogram();
+
+	// replaced when the metrics pass to another parser
+	private volatile Supplier<Map<String, CacheStats>> cacheStats;
+
+	// min-heap on latency, guarded by itself
+	private final PriorityQueue<SlowWord> slowest = new PriorityQueue<>();
+
+	// the latency a word must exceed to enter the slowest words
+	private volatile long slowThreshold;
+
+	ParserMetrics(Supplier<Map<String, CacheStats>> cacheStats) {
+		this.cacheStats = cacheStats;
+		for (ParseStage stage : ParseStage.values()) {
+			stages.put(stage, new Histogram());
+		}
+	}
+
+	void setCacheStats(Supplier<Map<String, CacheStats>> cacheStats) {
+		this.cacheStats = cacheStats;
+	}
+
+	void record(ParseStage stage, long nanos) {
+		stages.get(stage).record(nanos);
+	}
+
+	void recordWord(String word, long nanos, int depth, int candidateCount) {
+		stages.get(ParseStage.PARSE).record(nanos);
+		depths.record(depth);
+		candidates.record(candidateCount);
+
+		if (nanos > slowThreshold) {
+			synchronized (slowest) {
+				slowest.add(new SlowWord(word, nanos));
+				if (slowest.size() > SLOWEST_WORDS) {
+					slowest.poll();
+				}
+				if (slowest.size() == SLOWEST_WORDS) {
+					slowThreshold = slowest.peek().nanos;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the latency histogram of a stage
+	 * 
+	 * @param stage
+	 *            The stage
+	 * @return The histogram of its latencies in nanoseconds
+	 */
+	public Histogram getLatencies(ParseStage stage) {
+		return stages.get(stage);
+	}
+
+	/**
+	 * @return The histogram of the maximum recursion depth of each parsed word
+	 */
+	public Histogram getRecursionDepths() {
+		return depths;
+	}
+
+	/**
+	 * @return The histogram of the number of candidate stems tried for each
+	 *         parsed word
+	 */
+	public Histogram getCandidates() {
+		return candidates;
+	}
+
+	@Override
+	public Map<String, Long> getStageCounts() {
+		Map<String, Long> map = new LinkedHashMap<>();
+		for (Map.Entry<ParseStage, Histogram> entry : stages.entrySet()) {
+			map.put(entry.getKey().getLabel(), entry.getValue().getCount());
+		}
+		return map;
+	}
+
+	@Override
+	public Map<String, Double> getStageMeanMicros() {
+		Map<String, Double> map = new LinkedHashMap<>();
+		for (Map.Entry<ParseStage, Histogram> entry : stages.entrySet()) {
+			map.put(entry.getKey().getLabel(), entry.getValue().getMean() / NANOS_PER_MICRO);
+		}
+		return map;
+	}
+
+	@Override
+	public Map<String, Double> getStageP99Micros() {
+		Map<String, Double> map = new LinkedHashMap<>();
+		for (Map.Entry<ParseStage, Histogram> entry : stages.entrySet()) {
+			map.put(entry.getKey().getLabel(), entry.getValue().getPercentile(99) / NANOS_PER_MICRO);
+		}
+		return map;
+	}
+
+	@Override
+	public Map<String, Double> getStageMaxMicros() {
+		Map<String, Double> map = new LinkedHashMap<>();
+		for (Map.Entry<ParseStage, Histogram> entry : stages.entrySet()) {
+			map.put(entry.getKey().getLabel(), entry.getValue().getMax() / NANOS_PER_MICRO);
+		}
+		return map;
+	}
+
+	@Override
+	public double getMeanRecursionDepth() {
+		return depths.getMean();
+	}
+
+	@Override
+	public long getMaxRecursionDepth() {
+		return depths.getMax();
+	}
+
+	@Override
+	public double getMeanCandidates() {
+		return candidates.getMean();
+	}
+
+	@Override
+	public long getMaxCandidates() {
+		return candidates.getMax();
+	}
+
+	@Override
+	public Map<String, Double> getCacheHitRates() {
+		Map<String, Double> map = new LinkedHashMap<>();
+		for (Map.Entry<String, CacheStats> entry : cacheStats.get().entrySet()) {
+			map.put(entry.getKey(), entry.getValue().hitRate());
+		}
+		return map;
+	}
+
+	@Override
+	public List<String> getSlowestWords() {
+		List<SlowWord> words;
+		synchronized (slowest) {
+			words = new ArrayList<>(slowest);
+		}
+		Collections.sort(words, Collections.reverseOrder());
+
+		List<String> list = new ArrayList<>(words.size());
+		for (SlowWord word : words) {
+			list.add(word.toString());
+		}
+		return list;
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram histogram : stages.values()) {
+			histogram.reset();
+		}
+		depths.reset();
+		candidates.reset();
+		synchronized (slowest) {
+			slowest.clear();
+			slowThreshold = 0;
+		}
+	}
+
+	/**
+	 * Returns all the metrics at once, e.g. to be logged or exported to a
+	 * metrics registry
+	 * 
+	 * @return The metrics keyed by name, the histograms and cache statistics
+	 *         being given as strings
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		for (Map.Entry<ParseStage, Histogram> entry : stages.entrySet()) {
+			map.put("latency." + entry.getKey().getLabel(), entry.getValue().toString());
+		}
+		map.put("recursionDepth", depths.toString());
+		map.put("candidates", candidates.toString());
+		for (Map.Entry<String, CacheStats> entry : cacheStats.get().entrySet()) {
+			map.put("cache." + entry.getKey(), entry.getValue().toString());
+		}
+		map.put("slowestWords", getSlowestWords());
+		return map;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server
+	 * 
+	 * @param name
+	 *            The name telling this parser from the others
+	 * @return The name the metrics are registered under
+	 * @throws JMException
+	 *             If the registration fails, e.g. because the name is taken
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName("han.jia.cloud.nlp:type=MorphParser,name=" + ObjectName.quote(name));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	private static final class SlowWord implements Comparable<SlowWord> {
+
+		private final String word;
+		private final long nanos;
+
+		private SlowWord(String word, long nanos) {
+			this.word = word;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public int compareTo(SlowWord that) {
+			return Long.compare(this.nanos, that.nanos);
+		}
+
+		@Override
+		public String toString() {
+			return word + "=" + String.format("%.1f", nanos / NANOS_PER_MICRO) + "us";
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The management interface of {@code ParserMetrics}, through which the metrics
+ * of a parser can be read with any JMX client.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public interface ParserMetricsMXBean {
+
+	/**
+	 * @return The number of times each stage has run, keyed by stage
+	 */
+	Map<String, Long> getStageCounts();
+
+	/**
+	 * @return The mean latency of each stage in microseconds, keyed by stage
+	 */
+	Map<String, Double> getStageMeanMicros();
+
+	/**
+	 * @return The 99th percentile latency of each stage in microseconds, keyed
+	 *         by stage
+	 */
+	Map<String, Double> getStageP99Micros();
+
+	/**
+	 * @return The maximum latency of each stage in microseconds, keyed by stage
+	 */
+	Map<String, Double> getStageMaxMicros();
+
+	double getMeanRecursionDepth();
+
+	long getMaxRecursionDepth();
+
+	/**
+	 * @return The mean number of candidate stems tried per parsed word
+	 */
+	double getMeanCandidates();
+
+	long getMaxCandidates();
+
+	/**
+	 * @return The hit rate of each cache of the parser, keyed by cache
+	 */
+	Map<String, Double> getCacheHitRates();
+
+	/**
+	 * @return The slowest words parsed so far, with their latencies, the
+	 *         slowest first
+	 */
+	List<String> getSlowestWords();
+
+	/**
+	 * Clears all the metrics but the cache counters
+	 */
+	void reset();
+}
@@ -0,0 +1,353 @@
+package han.jia.cloud.nlp.ema;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.SpringAppContextCreator;
+
+/**
+ * The analyses of a whole vocabulary, computed once offline so that a
+ * {@code MorphParser} can answer the known words with a single lookup.
+ *
+ * <p>
+ * The vocabulary is parsed in alphabetical order by a fresh parser, which
+ * makes the analyses reproducible. They are saved into a compact file, in
+ * which every distinct text is kept once and every distinct subtree is kept
+ * once and shared by the trees containing it.
+ *
+ * <p>
+ * The file also holds the fingerprint of the dictionary the analyses were
+ * computed with, the one of {@link MorphNodeCodec#getFingerprint()}, and is
+ * only loaded along with a dictionary of the same fingerprint.
+ *
+ * <p>
+ * Usage example:
+ *
+ * <pre>
+ * // once, at build time
+ * java han.jia.cloud.nlp.ema.PrecomputedAnalyses ema.analyses dbdump/nlp.sql
+ *
+ * // at startup
+ * PrecomputedAnalyses analyses = PrecomputedAnalyses.load(Paths.get("ema.analyses"), dictionary);
+ * MorphParser parser = new MorphParser(dictionary, cacheFactory, analyses);
+ * </pre>
+ *
+ * <p>
+ * An instance is immutable and can be shared by many parsers and threads.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class PrecomputedAnalyses {
+
+	private final static Logger logger = LoggerFactory.getLogger(PrecomputedAnalyses.class);
+
+	// 'EMAP'
+	private static final int MAGIC = 0x454D4150;
+
+	/**
+	 * The version of the file format, to be increased whenever the format
+	 * changes
+	 */
+	public static final int VERSION = 2;
+
+	private static final int NONE = -1;
+
+	private final Map<String, MorphNode> analyses;
+	private final long fingerprint;
+
+	private PrecomputedAnalyses(Map<String, MorphNode> analyses, long fingerprint) {
+		this.analyses = analyses;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Builds the dictionary through the Spring context, or out of the dump file
+	 * if one is given, analyzes its vocabulary and saves the analyses
+	 *
+	 * @param args
+	 *            The path of the file to be written, optionally followed by
+	 *            the path of the nlp.sql dump file
+	 * @throws IOException
+	 *             If the context cannot be loaded or the files read or written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1 && args.length != 2) {
+			System.err.println("Usage: PrecomputedAnalyses <analyses-file> [<nlp.sql>]");
+			System.exit(1);
+		}
+
+		WordService wordService = args.length == 2 ? new SqlDumpWordService(Paths.get(args[1]))
+				: SpringAppContextCreator.getAppContext().getBean(WordService.class);
+		Dictionary dictionary = Singleton.INSTANCE.getDictionary(wordService);
+
+		PrecomputedAnalyses analyses = compute(dictionary);
+		analyses.save(Paths.get(args[0]));
+		logger.info("{} analyses written to {}", analyses.size(), args[0]);
+	}
+
+	/**
+	 * Analyzes the vocabulary of a dictionary: its words and the inflected
+	 * forms of its inflection table
+	 *
+	 * @param dictionary
+	 *            The dictionary whose vocabulary is to be analyzed
+	 * @return The analyses
+	 */
+	public static PrecomputedAnalyses compute(Dictionary dictionary) {
+
+		List<String> vocabulary = new ArrayList<>(dictionary.getWords());
+		for (Inflected inflected : dictionary.getInflectionTable().values()) {
+			vocabulary.add(inflected.getName());
+		}
+		return compute(new MorphParser(dictionary), vocabulary);
+	}
+
+	/**
+	 * Analyzes a vocabulary. The words are parsed in alphabetical order, so
+	 * the parser should not have parsed anything before for the analyses to
+	 * be reproducible.
+	 *
+	 * @param parser
+	 *            The parser of the words
+	 * @param vocabulary
+	 *            The words to be analyzed
+	 * @return The analyses
+	 */
+	public static PrecomputedAnalyses compute(MorphParser parser, Collection<String> vocabulary) {
+
+		TreeSet<String> words = new TreeSet<>(vocabulary);
+		Map<String, MorphNode> analyses = new HashMap<>(words.size() * 2);
+		for (String word : words) {
+			analyses.put(word, parser.parse(word));
+		}
+		return new PrecomputedAnalyses(analyses, MorphNodeCodec.fingerprint(parser.getDictionary()));
+	}
+
+	/**
+	 * Returns the fingerprint of the dictionary the analyses were computed
+	 * with
+	 *
+	 * @return The fingerprint of the symbol table of the dictionary
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Returns the analysis of a word
+	 *
+	 * @param word
+	 *            The word to be looked up
+	 * @return The analysis, or null if the word is not in the vocabulary
+	 */
+	public MorphNode get(String word) {
+		return analyses.get(word);
+	}
+
+	/**
+	 * Returns the number of words analyzed
+	 *
+	 * @return The size of the vocabulary
+	 */
+	public int size() {
+		return analyses.size();
+	}
+
+	/**
+	 * Saves the analyses into a file
+	 *
+	 * @param file
+	 *            The file to be written
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Loads the analyses from a file
+	 *
+	 * @param file
+	 *            The file to be read
+	 * @param dictionary
+	 *            The dictionary the analyses are to be used with
+	 * @return The loaded analyses
+	 * @throws IOException
+	 *             If the file cannot be read, is not of the supported version,
+	 *             or was computed with another dictionary
+	 */
+	public static PrecomputedAnalyses load(Path file, Dictionary dictionary) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			return read(in, dictionary);
+		}
+	}
+
+	/**
+	 * Writes the analyses into the stream: the distinct texts, then the
+	 * distinct nodes with the children before their parents, then the word
+	 * and node ids of the entries
+	 *
+	 * @param stream
+	 *            The stream to write to, which is not closed
+	 * @throws IOException
+	 *             If the stream cannot be written
+	 */
+	public void write(OutputStream stream) throws IOException {
+
+		Map<String, Integer> texts = new LinkedHashMap<>();
+		Map<MorphNode, Integer> ids = new IdentityHashMap<>();
+		Map<String, Integer> shapes = new HashMap<>();
+		List<int[]> nodes = new ArrayList<>();
+
+		int[] entries = new int[analyses.size() * 2];
+		int i = 0;
+		for (Map.Entry<String, MorphNode> entry : analyses.entrySet()) {
+			entries[i++] = textId(texts, entry.getKey());
+			entries[i++] = nodeId(entry.getValue(), texts, ids, shapes, nodes);
+		}
+
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(fingerprint);
+
+		out.writeInt(texts.size());
+		for (String text : texts.keySet()) {
+			out.writeUTF(text);
+		}
+
+		out.writeInt(nodes.size());
+		for (int[] node : nodes) {
+			out.writeInt(node[0]);
+			out.writeByte(node[1]);
+			out.writeInt(node[2]);
+			out.writeInt(node[3]);
+		}
+
+		out.writeInt(analyses.size());
+		for (int entry : entries) {
+			out.writeInt(entry);
+		}
+		out.flush();
+	}
+
+	private static int textId(Map<String, Integer> texts, String text) {
+		Integer id = texts.get(text);
+		if (id == null) {
+			id = texts.size();
+			texts.put(text, id);
+		}
+		return id;
+	}
+
+	// assigns ids in postorder, merging the subtrees of the same shape
+	private static int nodeId(MorphNode node, Map<String, Integer> texts, Map<MorphNode, Integer> ids,
+			Map<String, Integer> shapes, List<int[]> nodes) {
+
+		if (node == null) {
+			return NONE;
+		}
+
+		Integer id = ids.get(node);
+		if (id != null) {
+			return id;
+		}
+
+		int son = nodeId(node.getSon(), texts, ids, shapes, nodes);
+		int daughter = nodeId(node.getDaughter(), texts, ids, shapes, nodes);
+		int[] fields = { textId(texts, node.getText()), node.getType().ordinal(), son, daughter };
+
+		String shape = fields[0] + ":" + fields[1] + ":" + son + ":" + daughter;
+		id = shapes.get(shape);
+		if (id == null) {
+			id = nodes.size();
+			nodes.add(fields);
+			shapes.put(shape, id);
+		}
+		ids.put(node, id);
+		return id;
+	}
+
+	/**
+	 * Reads analyses from the stream
+	 *
+	 * @param stream
+	 *            The stream to read from, which is not closed
+	 * @param dictionary
+	 *            The dictionary the analyses are to be used with
+	 * @return The analyses read
+	 * @throws IOException
+	 *             If the stream cannot be read, does not hold analyses of the
+	 *             supported version, or holds analyses computed with another
+	 *             dictionary
+	 */
+	public static PrecomputedAnalyses read(InputStream stream, Dictionary dictionary) throws IOException {
+
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a precomputed analyses file");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported precomputed analyses version " + version + ", expected " + VERSION);
+		}
+		long fingerprint = in.readLong();
+		if (fingerprint != MorphNodeCodec.fingerprint(dictionary)) {
+			throw new IOException("The precomputed analyses were computed with another dictionary");
+		}
+
+		String[] texts = new String[in.readInt()];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = in.readUTF();
+		}
+
+		MorphType[] types = MorphType.values();
+		MorphNode[] nodes = new MorphNode[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			String text = texts[in.readInt()];
+			MorphType type = types[in.readByte()];
+			int son = in.readInt();
+			int daughter = in.readInt();
+			nodes[i] = new MorphNode(text, type, son == NONE ? null : nodes[son],
+					daughter == NONE ? null : nodes[daughter]);
+		}
+
+		int size = in.readInt();
+		Map<String, MorphNode> analyses = new HashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			String word = texts[in.readInt()];
+			analyses.put(word, nodes[in.readInt()]);
+		}
+		return new PrecomputedAnalyses(analyses, fingerprint);
+	}
+}
@@ -0,0 +1,144 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import han.jia.cloud.nlp.enums.Assimilation;
+
+/**
+ * A trie of the prefixes, keyed on their characters read from left to right.
+ *
+ * <p>
+ * Each prefix node carries the assimilation rule of its prefix, if any, so a
+ * single walk over the head of a word yields only the prefixes that both
+ * start the word and are allowed before the rest of it. The prefixes found
+ * are returned in the order of the prefix list this trie was built from.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class PrefixTrie {
+
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root = new Node();
+
+	/**
+	 * Builds the trie out of the prefixes
+	 *
+	 * @param prefixes
+	 *            The prefixes, in the order they are to be tried
+	 */
+	public PrefixTrie(List<String> prefixes) {
+		int rank = 0;
+		for (String prefix : prefixes) {
+			insert(prefix, rank++);
+		}
+	}
+
+	private void insert(String prefix, int rank) {
+		Node node = root;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.childOrNew(prefix.charAt(i));
+		}
+
+		// keep the first rank if the list holds the same prefix twice
+		if (node.prefix == null) {
+			node.prefix = prefix;
+			node.rank = rank;
+			node.assimilation = Assimilation.of(prefix);
+		}
+	}
+
+	/**
+	 * Returns the prefixes that the word starts with and whose assimilation
+	 * rules, if any, accept the stem following them
+	 *
+	 * @param word
+	 *            The word whose prefixes to be found
+	 * @param gap
+	 *            The number of characters between a prefix and its stem, e.g.
+	 *            1 for a hyphen
+	 *
+	 * @return The allowed prefixes in their list order, or an empty list if
+	 *         none
+	 */
+	public List<String> findPrefixes(String word, int gap) {
+
+		Node[] found = null;
+		int count = 0;
+
+		Node node = root;
+		for (int i = 0; i < word.length(); i++) {
+			node = node.child(word.charAt(i));
+			if (node == null) {
+				break;
+			}
+
+			if (node.prefix != null && node.accepts(word, i + 1 + gap)) {
+				if (found == null) {
+					found = new Node[word.length()];
+				}
+
+				// insertion sort by rank, there are only a handful of matches
+				int j = count++;
+				while (j > 0 && found[j - 1].rank > node.rank) {
+					found[j] = found[j - 1];
+					j--;
+				}
+				found[j] = node;
+			}
+		}
+
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+
+		List<String> prefixes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			prefixes.add(found[i].prefix);
+		}
+		return prefixes;
+	}
+
+	private static class Node {
+
+		private char[] labels = NO_LABELS;
+		private Node[] children = NO_CHILDREN;
+
+		private String prefix;
+		private int rank;
+		private Assimilation assimilation;
+
+		private boolean accepts(String word, int stemStart) {
+			if (assimilation == null) {
+				return true;
+			}
+			return stemStart < word.length() && assimilation.allows(word.charAt(stemStart));
+		}
+
+		private Node child(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node childOrNew(char c) {
+			Node child = child(c);
+			if (child == null) {
+				child = new Node();
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				labels[labels.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
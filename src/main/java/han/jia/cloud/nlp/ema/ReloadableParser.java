@@ -0,0 +1,247 @@
+package han.jia.cloud.nlp.ema;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.DictionarySnapshot;
+import han.jia.cloud.nlp.util.LookupCache;
+import han.jia.cloud.nlp.util.SegmentedLruCache;
+
+/**
+ * A parser whose dictionary can be replaced while it is in use, so that new
+ * rows of the tables are picked up without a restart.
+ *
+ * <p>
+ * Each dictionary is a version, parsed by its own {@code MorphParser} with its
+ * own caches. A new version is loaded in the background, its caches are
+ * warmed up with the hottest words of the current version, and it then
+ * replaces the current version atomically. A parse in progress finishes
+ * against the version it started with, and no cache ever mixes the analyses
+ * of two versions. The metrics of the current version, if enabled, go on in
+ * the new version, so the {@code ParserMetrics} a caller holds or has
+ * registered keeps counting across reloads.
+ *
+ * <pre>
+ * ReloadableParser parser = new ReloadableParser(dictionary);
+ * ...
+ * parser.reload(wordService).thenAccept(version -&gt; logger.info("version {} in use", version));
+ * </pre>
+ *
+ * <p>
+ * An instance is thread-safe.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class ReloadableParser {
+
+	private final static Logger logger = LoggerFactory.getLogger(ReloadableParser.class);
+
+	/**
+	 * The default number of hot words parsed by a new version before it is
+	 * put in use
+	 */
+	public static final int DEFAULT_WARM_UP_SIZE = 10_000;
+
+	// runs each reload on a thread of its own
+	private static final Executor RELOADER = runnable -> {
+		Thread thread = new Thread(runnable, "dictionary-reloader");
+		thread.setDaemon(true);
+		thread.start();
+	};
+
+	private final LookupCache.Factory cacheFactory;
+	private final int warmUpSize;
+
+	// replaced as a whole, so a reader always sees a matching version and
+	// parser
+	private volatile Version current;
+
+	/**
+	 * Creates a parser of the passed dictionary, with caches bounded to a
+	 * default size
+	 *
+	 * @param dictionary
+	 *            The first version of the dictionary
+	 */
+	public ReloadableParser(Dictionary dictionary) {
+		this(dictionary, SegmentedLruCache.factory(MorphParser.DEFAULT_CACHE_SIZE, 0, TimeUnit.SECONDS),
+				DEFAULT_WARM_UP_SIZE);
+	}
+
+	/**
+	 * Creates a parser of the passed dictionary
+	 *
+	 * @param dictionary
+	 *            The first version of the dictionary
+	 * @param cacheFactory
+	 *            The factory of the caches of every version
+	 * @param warmUpSize
+	 *            The number of hot words parsed by a new version before it is
+	 *            put in use, 0 for none
+	 */
+	public ReloadableParser(Dictionary dictionary, LookupCache.Factory cacheFactory, int warmUpSize) {
+		this.cacheFactory = cacheFactory;
+		this.warmUpSize = warmUpSize;
+		this.current = new Version(1, dictionary, new MorphParser(dictionary, cacheFactory));
+	}
+
+	/**
+	 * Parses a lexicon against the current version
+	 *
+	 * @param text
+	 *            The text to be parsed
+	 * @return The result of parsing the lexicon
+	 *
+	 * @see MorphParser#parse(String)
+	 */
+	public MorphNode parse(String text) {
+		return current.parser.parse(text);
+	}
+
+	/**
+	 * Parses a batch of lexicons, all against the current version
+	 *
+	 * @param texts
+	 *            The texts to be parsed
+	 * @return The results of parsing the texts, in the order of the texts
+	 *
+	 * @see MorphParser#parseAll(Collection)
+	 */
+	public List<MorphNode> parseAll(Collection<String> texts) {
+		return current.parser.parseAll(texts);
+	}
+
+	/**
+	 * Returns the parser of the current version, e.g. to run several parses
+	 * against the same version or to read its statistics
+	 *
+	 * @return The parser of the current version
+	 */
+	public MorphParser getParser() {
+		return current.parser;
+	}
+
+	/**
+	 * Returns the dictionary of the current version
+	 *
+	 * @return The current dictionary
+	 */
+	public Dictionary getDictionary() {
+		return current.dictionary;
+	}
+
+	/**
+	 * Returns the number of the current version, which starts at 1 and grows
+	 * by one with each swap
+	 *
+	 * @return The current version
+	 */
+	public long getVersion() {
+		return current.number;
+	}
+
+	/**
+	 * Builds a new version from the database in the background and puts it in
+	 * use. The dictionary handed out by {@code Singleton} is replaced too.
+	 *
+	 * @param wordService
+	 *            The service providing the tables
+	 * @return The future of the number of the new version
+	 */
+	public CompletableFuture<Long> reload(WordService wordService) {
+		return Singleton.INSTANCE.reload(wordService).thenApplyAsync(this::swap, RELOADER);
+	}
+
+	/**
+	 * Loads a new version from a snapshot in the background and puts it in
+	 * use
+	 *
+	 * @param snapshot
+	 *            The snapshot file
+	 * @return The future of the number of the new version
+	 *
+	 * @see DictionarySnapshot
+	 */
+	public CompletableFuture<Long> reload(Path snapshot) {
+		return reload(() -> DictionarySnapshot.load(snapshot));
+	}
+
+	/**
+	 * Loads a new version in the background and puts it in use
+	 *
+	 * @param loader
+	 *            The loader of the new dictionary
+	 * @return The future of the number of the new version, completed
+	 *         exceptionally if the loader fails, in which case the current
+	 *         version stays in use
+	 */
+	public CompletableFuture<Long> reload(Callable<? extends Dictionary> loader) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return swap(loader.call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, RELOADER);
+	}
+
+	/**
+	 * Puts a dictionary in use as a new version, after warming up its caches
+	 * with the hottest words of the current version. The swaps are serialized;
+	 * the parses keep going on the current version while the new one warms up.
+	 *
+	 * @param dictionary
+	 *            The new dictionary
+	 * @return The number of the new version
+	 */
+	public synchronized long swap(Dictionary dictionary) {
+
+		Version old = current;
+		MorphParser parser = new MorphParser(dictionary, cacheFactory);
+
+		long start = System.nanoTime();
+		List<String> hotWords = old.parser.getHotWords(warmUpSize);
+		for (String word : hotWords) {
+			parser.parse(word);
+		}
+
+		// after the warm-up, so that it is not counted
+		ParserMetrics metrics = old.parser.getMetrics();
+		if (metrics != null) {
+			parser.enableMetrics(metrics);
+		}
+
+		current = new Version(old.number + 1, dictionary, parser);
+		logger.info("Dictionary version {} in use, {} words warmed up in {} ms", current.number, hotWords.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return current.number;
+	}
+
+	private static final class Version {
+
+		private final long number;
+		private final Dictionary dictionary;
+		private final MorphParser parser;
+
+		private Version(long number, Dictionary dictionary, MorphParser parser) {
+			this.number = number;
+			this.dictionary = dictionary;
+			this.parser = parser;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package han.jia.cloud.nlp.ema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of the decomposable endings, keyed on their characters read from
+ * right to left.
+ *
+ * <p>
+ * Walking a word backwards through this trie visits exactly the endings the
+ * word ends with, so finding the candidate endings of a word depends on the
+ * length of the word rather than on the size of the ending table. The endings
+ * found are returned in the priority order of the table they were built from,
+ * which is the order the parser tries them in.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class SuffixTrie {
+
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root = new Node();
+
+	/**
+	 * Builds the trie out of the keys of the suffix table
+	 *
+	 * @param suffixTable
+	 *            The ending table whose iteration order gives the priority of
+	 *            each ending
+	 */
+	public SuffixTrie(Map<String, List<SuffixObj>> suffixTable) {
+		int rank = 0;
+		for (String ending : suffixTable.keySet()) {
+			insert(ending, rank++);
+		}
+	}
+
+	private void insert(String ending, int rank) {
+		Node node = root;
+		for (int i = ending.length() - 1; i >= 0; i--) {
+			node = node.childOrNew(ending.charAt(i));
+		}
+		node.ending = ending;
+		node.rank = rank;
+	}
+
+	/**
+	 * Returns the endings that the word ends with, in their table order
+	 *
+	 * @param word
+	 *            The word whose endings to be found
+	 *
+	 * @return The endings that the word ends with, or an empty list if none
+	 */
+	public List<String> findEndings(String word) {
+
+		Node[] found = null;
+		int count = 0;
+
+		Node node = root;
+		for (int i = word.length() - 1; i >= 0; i--) {
+			node = node.child(word.charAt(i));
+			if (node == null) {
+				break;
+			}
+
+			if (node.ending != null) {
+				if (found == null) {
+					found = new Node[word.length()];
+				}
+
+				// insertion sort by rank, there are only a handful of matches
+				int j = count++;
+				while (j > 0 && found[j - 1].rank > node.rank) {
+					found[j] = found[j - 1];
+					j--;
+				}
+				found[j] = node;
+			}
+		}
+
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+
+		List<String> endings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			endings.add(found[i].ending);
+		}
+		return endings;
+	}
+
+	private static class Node {
+
+		private char[] labels = NO_LABELS;
+		private Node[] children = NO_CHILDREN;
+
+		private String ending;
+		private int rank;
+
+		private Node child(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node childOrNew(char c) {
+			Node child = child(c);
+			if (child == null) {
+				child = new Node();
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				labels[labels.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package han.jia.cloud.nlp.ema;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import han.jia.cloud.nlp.util.WordTokenizer;
+
+/**
+ * Analyzes running text: it splits the text into words with a
+ * {@code WordTokenizer} and parses each of them with a {@code MorphParser}.
+ *
+ * <p>
+ * The text is read through a fixed-size buffer and each token is handed over
+ * as soon as it is analyzed, so the memory needed does not depend on the size
+ * of the text. Words are parsed as {@link MorphParser#parseAsWritten(String)}
+ * does; the tokens keep the text as it appears, with its character offsets.
+ *
+ * <pre>
+ * try (Reader reader = Files.newBufferedReader(path)) {
+ * 	analyzer.analyze(reader, token -&gt; System.out.println(token));
+ * }
+ * </pre>
+ *
+ * @author Jiayun Han
+ *
+ */
+public class TextAnalyzer {
+
+	private final MorphParser parser;
+	private final int bufferSize;
+
+	/**
+	 * Creates an analyzer reading through a buffer of the default size
+	 *
+	 * @param parser
+	 *            The parser of the words
+	 */
+	public TextAnalyzer(MorphParser parser) {
+		this(parser, WordTokenizer.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates an analyzer
+	 *
+	 * @param parser
+	 *            The parser of the words
+	 * @param bufferSize
+	 *            The size of the buffer, in chars, which is also the maximum
+	 *            length of a word
+	 */
+	public TextAnalyzer(MorphParser parser, int bufferSize) {
+		this.parser = parser;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Analyzes the text of a reader, handing each token to the sink in the
+	 * order of the text. The reader is not closed.
+	 *
+	 * @param reader
+	 *            The reader of the text
+	 * @param sink
+	 *            The consumer of the tokens
+	 * @throws IOException
+	 *             If the text cannot be read
+	 */
+	public void analyze(Reader reader, Consumer<Token> sink) throws IOException {
+		WordTokenizer tokenizer = new WordTokenizer(reader, bufferSize);
+		while (tokenizer.next()) {
+			sink.accept(toToken(tokenizer));
+		}
+	}
+
+	/**
+	 * Analyzes the text of a reader lazily: the text is read as the stream is
+	 * consumed. Closing the stream closes the reader.
+	 *
+	 * @param reader
+	 *            The reader of the text
+	 * @return The tokens in the order of the text; a read failure is thrown
+	 *         as an {@code UncheckedIOException}
+	 */
+	public Stream<Token> analyze(Reader reader) {
+
+		WordTokenizer tokenizer = new WordTokenizer(reader, bufferSize);
+
+		Spliterator<Token> tokens = new Spliterators.AbstractSpliterator<Token>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super Token> action) {
+				try {
+					if (!tokenizer.next()) {
+						return false;
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				action.accept(toToken(tokenizer));
+				return true;
+			}
+		};
+
+		return StreamSupport.stream(tokens, false).onClose(() -> {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Analyzes the text of a channel lazily, decoding its bytes with the passed
+	 * charset. Closing the stream closes the channel.
+	 *
+	 * @param channel
+	 *            The channel of the text, e.g. a {@code FileChannel}
+	 * @param charset
+	 *            The charset of the text
+	 * @return The tokens in the order of the text
+	 */
+	public Stream<Token> analyze(ReadableByteChannel channel, Charset charset) {
+		return analyze(Channels.newReader(channel, charset.newDecoder(), bufferSize));
+	}
+
+	private Token toToken(WordTokenizer tokenizer) {
+		String word = tokenizer.getWord();
+		MorphNode node = parser.parseAsWritten(word);
+		return new Token(word, tokenizer.getStart(), tokenizer.getEnd(), node);
+	}
+
+	/**
+	 * A word of the text with its analysis
+	 */
+	public static final class Token {
+
+		private final String text;
+		private final long start;
+		private final long end;
+		private final MorphNode node;
+
+		public Token(String text, long start, long end, MorphNode node) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+			this.node = node;
+		}
+
+		/**
+		 * Returns the word as it appears in the text
+		 *
+		 * @return The word
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Returns the offset of the first char of the word in the text
+		 *
+		 * @return The start offset, inclusive
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the offset following the last char of the word in the text
+		 *
+		 * @return The end offset, exclusive
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * Returns the analysis of the word
+		 *
+		 * @return The result of parsing the word as written, or in lower case
+		 *         if it is unknown as written
+		 */
+		public MorphNode getNode() {
+			return node;
+		}
+
+		@Override
+		public String toString() {
+			return text + "[" + start + "," + end + ")";
+		}
+	}
+}
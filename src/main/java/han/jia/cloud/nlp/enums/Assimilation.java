@@ -0,0 +1,67 @@
+package han.jia.cloud.nlp.enums;
+
+import static han.jia.cloud.nlp.util.Constants.*;
+
+/**
+ * The prefixes whose form is assimilated to the first letter of the stem they
+ * are attached to, such as 'ir' in 'irregular' and 'im' in 'impossible'.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public enum Assimilation {
+
+	// irregular, not irate
+	IR(ir, "r", true),
+
+	// illogical, not ilex
+	IL(il, "l", true),
+
+	// impossible, immature, imbalance
+	IM(im, "mpb", true),
+
+	// incorrect, but not inmature, inpossible, inbalance, inlogical, inregular
+	IN(in, "mpblr", false);
+
+	private String prefix;
+	private String initials;
+	private boolean required;
+
+	private Assimilation(String prefix, String initials, boolean required) {
+		this.prefix = prefix;
+		this.initials = initials;
+		this.required = required;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Checks whether this prefix may be attached to a stem starting with the
+	 * passed letter
+	 * 
+	 * @param initial
+	 *            The first letter of the stem
+	 * @return true if the prefix can precede the letter; false otherwise
+	 */
+	public boolean allows(char initial) {
+		return (initials.indexOf(initial) >= 0) == required;
+	}
+
+	/**
+	 * Returns the assimilation rule of the passed prefix
+	 * 
+	 * @param prefix
+	 *            The prefix whose rule to be found
+	 * @return The rule of the prefix or null if the prefix has none
+	 */
+	public static Assimilation of(String prefix) {
+		for (Assimilation assimilation : values()) {
+			if (assimilation.prefix.equals(prefix)) {
+				return assimilation;
+			}
+		}
+		return null;
+	}
+}
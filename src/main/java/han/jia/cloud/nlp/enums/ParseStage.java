@@ -0,0 +1,37 @@
+package han.jia.cloud.nlp.enums;
+
+/**
+ * The stages of a parse whose latencies are measured by {@code ParserMetrics}.
+ * The stages nest in one another, so the time of a stage includes the time of
+ * the stages it calls.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public enum ParseStage {
+
+	// a whole parse of a word missing the word cache
+	PARSE("parse"),
+
+	DE_INFLECT("deInflect"),
+
+	BOOTSTRAP("bootstrap"),
+
+	LAST_RESORT("lastResort"),
+
+	TO_STEM_SUFFIX("toStemSuffix"),
+
+	TO_PREFIX_STEM("toPrefixStem"),
+
+	VALIDATE("validate");
+
+	private String label;
+
+	private ParseStage(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
@@ -7,38 +7,82 @@ import java.util.regex.Pattern;
 /**
  * For matching and processing semi-irregular words.
  * 
+ * <p>
+ * A rule matches a word made of at least {@code minFree} arbitrary chars, the
+ * {@code headEnd} chars and the {@code ending}, case-insensitively. The stem
+ * of the word is its head, i.e. the word without the ending, plus the add-on.
+ * For example, _i_1 matches 'fungi', whose head 'fung' plus 'us' is the stem
+ * 'fungus'.
+ * 
+ * <p>
+ * The rules are matched all at once by {@code QuasiIrregularMatcher}; the
+ * equivalent regular expression of each rule is kept for reference.
+ * 
  * @author Jiayun Han
  *
  */
 public enum QuasiIrregular {
 
-	_i_1(Pattern.compile("(.{4,})i", Pattern.CASE_INSENSITIVE), us, i),
-	_i_2(Pattern.compile("(.{4,})i", Pattern.CASE_INSENSITIVE), o, i),
+	_i_1(4, EMPTY_STR, i, us, i),
+	_i_2(4, EMPTY_STR, i, o, i),
 	
-	_a_1(Pattern.compile("(.{4,})a", Pattern.CASE_INSENSITIVE), um, a),
-	_a_2(Pattern.compile("(.{4,})a", Pattern.CASE_INSENSITIVE), on, a),
-	_a_3(Pattern.compile("(.{3,})ta", Pattern.CASE_INSENSITIVE), EMPTY_STR, ta),
+	_a_1(4, EMPTY_STR, a, um, a),
+	_a_2(4, EMPTY_STR, a, on, a),
+	_a_3(3, EMPTY_STR, ta, EMPTY_STR, ta),
 	
-	_es(Pattern.compile("(.{3,})es", Pattern.CASE_INSENSITIVE), is, e),
-	_ae(Pattern.compile("(.{3,}a)e", Pattern.CASE_INSENSITIVE), EMPTY_STR, e),
+	_es(3, EMPTY_STR, es, is, e),
+	_ae(3, a, e, EMPTY_STR, e),
 	
-	_men(Pattern.compile("(.*m)en", Pattern.CASE_INSENSITIVE), an, e),
-	_ept(Pattern.compile("(.{2,})ept", Pattern.CASE_INSENSITIVE), eep, ept);
+	_men(0, m, en, an, e),
+	_ept(2, EMPTY_STR, ept, eep, ept);
 
-	private Pattern pattern;
-	private String addOn;
-	private String inflection;
+	private final int minFree;
+	private final String headEnd;
+	private final String ending;
 
-	private QuasiIrregular(Pattern pattern, String addOn, String inflection) {
-		this.pattern = pattern;
+	private final Pattern pattern;
+	private final String addOn;
+	private final String inflection;
+
+	private QuasiIrregular(int minFree, String headEnd, String ending, String addOn, String inflection) {
+		this.minFree = minFree;
+		this.headEnd = headEnd;
+		this.ending = ending;
+		this.pattern = Pattern.compile("(.{" + minFree + ",}" + headEnd + ")" + ending, Pattern.CASE_INSENSITIVE);
 		this.addOn = addOn;
 		this.inflection = inflection;
 	}
 
+	/**
+	 * Returns the equivalent regular expression, whose first group is the head
+	 * 
+	 * @return The pattern of this rule
+	 */
 	public Pattern getPattern() {
 		return pattern;
 	}
 
+	/**
+	 * @return The minimum number of arbitrary chars the word starts with
+	 */
+	public int getMinFree() {
+		return minFree;
+	}
+
+	/**
+	 * @return The chars ending the head, possibly empty
+	 */
+	public String getHeadEnd() {
+		return headEnd;
+	}
+
+	/**
+	 * @return The chars following the head, which are cut off from the word
+	 */
+	public String getEnding() {
+		return ending;
+	}
+
 	public String getAddOn() {
 		return addOn;
 	}
@@ -46,8 +90,19 @@ public enum QuasiIrregular {
 	public String getInflection() {
 		return inflection;
 	}
-	
-	public boolean matches(String word){
-		return pattern.matcher(word).matches();
+
+	/**
+	 * Returns the length of the head of a word matched by this rule
+	 * 
+	 * @param word
+	 *            The matched word
+	 * @return The length of the word without the ending
+	 */
+	public int headLength(String word) {
+		return word.length() - ending.length();
+	}
+
+	public boolean matches(String word) {
+		return QuasiIrregularMatcher.INSTANCE.matches(word, this);
 	}    
 }
@@ -0,0 +1,139 @@
+package han.jia.cloud.nlp.enums;
+
+import java.util.Arrays;
+
+/**
+ * The rules of {@code QuasiIrregular} compiled into a single trie of their
+ * literal endings, keyed on their characters read from right to left.
+ *
+ * <p>
+ * One backward scan of a word through this trie finds every rule the word
+ * matches, without any regular expression. The rules found are reported as a
+ * bit set of their ordinals, so that they can be tried in declaration order
+ * without creating anything; the head of the word matched by a rule is given
+ * by {@link QuasiIrregular#headLength(String)}.
+ *
+ * <p>
+ * The letters are compared case-insensitively in the US-ASCII range, as the
+ * patterns of the rules do.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class QuasiIrregularMatcher {
+
+	private static final char[] NO_LABELS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	/**
+	 * The matcher of all the rules
+	 */
+	public static final QuasiIrregularMatcher INSTANCE = new QuasiIrregularMatcher(QuasiIrregular.values());
+
+	private final QuasiIrregular[] rules;
+	private final Node root = new Node();
+
+	private QuasiIrregularMatcher(QuasiIrregular[] rules) {
+		if (rules.length > Long.SIZE) {
+			throw new IllegalArgumentException("Too many rules: " + rules.length);
+		}
+
+		this.rules = rules;
+		for (QuasiIrregular rule : rules) {
+			String literal = rule.getHeadEnd() + rule.getEnding();
+			Node node = root;
+			for (int i = literal.length() - 1; i >= 0; i--) {
+				node = node.childOrNew(fold(literal.charAt(i)));
+			}
+			node.rules |= 1L << rule.ordinal();
+		}
+	}
+
+	/**
+	 * Returns the rules that the word matches
+	 *
+	 * @param word
+	 *            The word to be matched
+	 * @return The bits of the ordinals of the matched rules, 0 if none
+	 */
+	public long match(String word) {
+
+		long matched = 0L;
+		int length = word.length();
+
+		Node node = root;
+		for (int i = length - 1; i >= 0; i--) {
+			node = node.child(fold(word.charAt(i)));
+			if (node == null) {
+				break;
+			}
+
+			// the rules ending here match if enough chars are left before
+			for (long bits = node.rules; bits != 0L; bits &= bits - 1) {
+				QuasiIrregular rule = rules[Long.numberOfTrailingZeros(bits)];
+				if (i >= rule.getMinFree()) {
+					matched |= bits & -bits;
+				}
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Checks whether the word matches a rule
+	 *
+	 * @param word
+	 *            The word to be matched
+	 * @param rule
+	 *            The rule to be matched
+	 * @return true if the word matches the rule; false otherwise
+	 */
+	public boolean matches(String word, QuasiIrregular rule) {
+		return (match(word) & (1L << rule.ordinal())) != 0L;
+	}
+
+	/**
+	 * Returns the rule of an ordinal found by {@link #match(String)}
+	 *
+	 * @param ordinal
+	 *            The ordinal of the rule
+	 * @return The rule
+	 */
+	public QuasiIrregular rule(int ordinal) {
+		return rules[ordinal];
+	}
+
+	private static char fold(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static class Node {
+
+		private char[] labels = NO_LABELS;
+		private Node[] children = NO_CHILDREN;
+
+		// the bits of the rules whose literal ending ends here
+		private long rules;
+
+		private Node child(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node childOrNew(char c) {
+			Node child = child(c);
+			if (child == null) {
+				child = new Node();
+				labels = Arrays.copyOf(labels, labels.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				labels[labels.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -6,14 +6,19 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import han.jia.cloud.nlp.domain.Ending;
 import han.jia.cloud.nlp.domain.Inflected;
 import han.jia.cloud.nlp.domain.Prefix;
 import han.jia.cloud.nlp.domain.Word;
-import han.jia.cloud.nlp.ema.GraphNode;
+import han.jia.cloud.nlp.ema.DerivativeGraph;
 import han.jia.cloud.nlp.ema.MorphNode;
 import han.jia.cloud.nlp.ema.SuffixObj;
 import han.jia.cloud.nlp.service.WordService;
@@ -24,6 +29,21 @@ import han.jia.cloud.nlp.util.Constants;
  * The purpose is to ensure a singleton instance of the expensive Dictionary is
  * created when MorphParser is initiated.
  * 
+ * <p>
+ * The dictionary is built once, however many threads ask for it at the same
+ * time: the first caller starts the build and all the callers share its
+ * future. The tables are loaded and their lookup structures built
+ * concurrently, so the build takes about as long as loading the largest
+ * table. If the build fails, the next caller starts a new one.
+ * 
+ * <p>
+ * A service can start the build with {@link #prewarm(WordService)} and accept
+ * traffic while the dictionary is loading:
+ * 
+ * <pre>
+ * Singleton.INSTANCE.prewarm(wordService).thenAccept(d -&gt; logger.info("dictionary ready"));
+ * </pre>
+ * 
  * @author Jiayun Han
  *
  */
@@ -31,46 +51,138 @@ public enum Singleton {
 
 	INSTANCE;
 
-	private Dictionary dictionary;
+	// enough threads for all the tables to be loaded at once
+	private static final int LOADERS = 6;
 
+	private final AtomicReference<CompletableFuture<Dictionary>> dictionaryFuture = new AtomicReference<>();
+
+	/**
+	 * Returns the dictionary, building it if it is not built yet and waiting
+	 * for the build in progress if any
+	 * 
+	 * @param wordService
+	 *            The service providing the tables, only used by the build
+	 * @return The dictionary
+	 */
 	public Dictionary getDictionary(WordService wordService) {
-		return Optional.ofNullable(dictionary).orElseGet(
-				() -> buildDictionary(wordService));
+		try {
+			return prewarm(wordService).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
 	}
 
-	private Dictionary buildDictionary(WordService wordService) {
+	/**
+	 * Starts building the dictionary in the background, unless it is built or
+	 * being built already
+	 * 
+	 * @param wordService
+	 *            The service providing the tables, only used by the build
+	 * @return The future of the dictionary, shared by all the callers
+	 */
+	public CompletableFuture<Dictionary> prewarm(WordService wordService) {
+
+		CompletableFuture<Dictionary> current = dictionaryFuture.get();
+		if (current != null) {
+			return current;
+		}
+
+		CompletableFuture<Dictionary> created = new CompletableFuture<>();
+		if (!dictionaryFuture.compareAndSet(null, created)) {
+			return dictionaryFuture.get();
+		}
+
+		build(wordService).whenComplete((built, failure) -> {
+			if (failure == null) {
+				created.complete(built);
+			} else {
+				// let the next caller try again
+				dictionaryFuture.compareAndSet(created, null);
+				created.completeExceptionally(
+						failure instanceof CompletionException ? failure.getCause() : failure);
+			}
+		});
+		return created;
+	}
 
-		Dictionary dictionary = new Dictionary();
+	/**
+	 * Builds a new version of the dictionary in the background, e.g. to pick
+	 * up new rows of the tables, and hands it out instead of the current one
+	 * once it is built. The current one is kept if the build fails.
+	 * 
+	 * @param wordService
+	 *            The service providing the tables
+	 * @return The future of the new dictionary
+	 */
+	public CompletableFuture<Dictionary> reload(WordService wordService) {
+		return build(wordService).thenApply(built -> {
+			dictionaryFuture.set(CompletableFuture.completedFuture(built));
+			return built;
+		});
+	}
 
-		Map<Boolean, List<Word>> wordMap = wordService.findAllWords().collect(
-				Collectors.groupingBy(Word::isSplittable));
+	private CompletableFuture<Dictionary> build(WordService wordService) {
 
-		Map<Integer, List<Ending>> endingMap = wordService.findAllEndings()
-				.collect(Collectors.groupingBy(Ending::getType));
+		ExecutorService loaders = Executors.newFixedThreadPool(LOADERS, runnable -> {
+			Thread thread = new Thread(runnable, "dictionary-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
 
-		dictionary = new Dictionary();
+		CompletableFuture<Dictionary> built = buildDictionary(wordService, loaders);
+		built.whenComplete((dictionary, failure) -> loaders.shutdown());
+		return built;
+	}
+
+	/**
+	 * Loads the tables concurrently. Each task sets its own fields of the
+	 * dictionary; the returned future is completed after all of them, which
+	 * makes their writes visible to whoever gets the dictionary from it.
+	 */
+	private CompletableFuture<Dictionary> buildDictionary(WordService wordService, Executor loaders) {
+
+		Dictionary dictionary = new Dictionary();
 
 		dictionary.setEdErEstIng("ed", "er", "est", "ing");
 		dictionary.setEsEnding("ches", "oes", "ses", "shes", "ves", "xes",
 				"zes");
 
-		setUnsplittables(wordMap, dictionary);
-		setWords(wordMap, dictionary);
-
-		setStrongSuffixes(endingMap, dictionary);
-		setCYs(endingMap, dictionary);
-		setVCCs(endingMap, dictionary);
-
-		setSuffixTable(endingMap, dictionary);
-		setPrefixes(wordService, dictionary);
-		setAffixes(dictionary);
-
-		setInflectionTable(wordService, dictionary);
-		setDerivativeMap(wordService, dictionary);
-		setMorphNodeMap(wordService, dictionary);
-
-		this.dictionary = dictionary;
-		return dictionary;
+		CompletableFuture<Void> words = CompletableFuture.runAsync(() -> {
+			Map<Boolean, List<Word>> wordMap = wordService.findAllWords().collect(
+					Collectors.groupingBy(Word::isSplittable));
+			setUnsplittables(wordMap, dictionary);
+			setWords(wordMap, dictionary);
+		}, loaders);
+
+		CompletableFuture<Void> endings = CompletableFuture.runAsync(() -> {
+			Map<Integer, List<Ending>> endingMap = wordService.findAllEndings()
+					.collect(Collectors.groupingBy(Ending::getType));
+			setStrongSuffixes(endingMap, dictionary);
+			setCYs(endingMap, dictionary);
+			setVCCs(endingMap, dictionary);
+			setSuffixTable(endingMap, dictionary);
+		}, loaders);
+
+		CompletableFuture<Void> prefixes = CompletableFuture.runAsync(() -> setPrefixes(wordService, dictionary),
+				loaders);
+		CompletableFuture<Void> affixes = endings.runAfterBoth(prefixes, () -> setAffixes(dictionary));
+
+		CompletableFuture<Void> inflectionTable = CompletableFuture
+				.runAsync(() -> setInflectionTable(wordService, dictionary), loaders);
+		CompletableFuture<Void> derivativeGraph = CompletableFuture
+				.runAsync(() -> setDerivativeGraph(wordService, dictionary), loaders);
+		CompletableFuture<Void> morphNodeMap = CompletableFuture
+				.runAsync(() -> setMorphNodeMap(wordService, dictionary), loaders);
+
+		return CompletableFuture.allOf(words, affixes, inflectionTable, derivativeGraph, morphNodeMap)
+				.thenApply(done -> dictionary);
 	}
 
 	private void setVCCs(Map<Integer, List<Ending>> endingMap,
@@ -86,27 +198,16 @@ public enum Singleton {
 				.stream().map(Ending::getName).collect(Collectors.toList()));
 	}
 
-	private void setDerivativeMap(WordService wordService, Dictionary dictionary) {
+	private void setDerivativeGraph(WordService wordService, Dictionary dictionary) {
 
 		final String splitter = "\\s*,\\s*";
 
-		Map<String, GraphNode> graphNodeMap = new HashMap<>();
-
-		wordService.findAllDerivatives().forEach(d -> {
+		DerivativeGraph.Builder builder = new DerivativeGraph.Builder();
 
-			String ks = d.getName();
-			GraphNode stem = new GraphNode(ks);
-			graphNodeMap.put(ks, stem);
-
-			Arrays.stream(d.getDerivatives().split(splitter)).forEach(ds -> {
-				GraphNode derivative = new GraphNode(ds);
-				derivative.setStem(stem);
-				stem.addDerivative(derivative);
-				graphNodeMap.put(ds, derivative);
-			});
-		});
+		wordService.findAllDerivatives().forEach(
+				d -> builder.addDerivatives(d.getName(), Arrays.asList(d.getDerivatives().split(splitter))));
 
-		dictionary.setDerivativeMap(graphNodeMap);
+		dictionary.setDerivativeGraph(builder.build());
 	}
 
 	private void setMorphNodeMap(WordService wordService, Dictionary dictionary) {
@@ -118,8 +219,7 @@ public enum Singleton {
 						n -> {
 
 							String word = n.getName();
-							MorphNode node = new MorphNode(word,
-									MorphType.Word, null, null);
+							MorphNode son, daughter;
 
 							String left = n.getLeft();
 							String bareLeft = left.endsWith(Constants.HYPHEN) ? left
@@ -133,33 +233,28 @@ public enum Singleton {
 							if (bareLeft == null && bareRight == null) { // bull
 																			// +
 																			// pen
-								node.setSon(new MorphNode(left, MorphType.Word,
-										null, null));
-								node.setDaughter(new MorphNode(right,
-										MorphType.Word, null, null));
+								son = new MorphNode(left, MorphType.Word);
+								daughter = new MorphNode(right, MorphType.Word);
 
 							} else if (bareLeft != null && bareRight != null) { // aero-
 																				// +
 																				// -phyte
-								node.setSon(new MorphNode(bareLeft,
-										MorphType.Prefix, null, null));
-								node.setDaughter(new MorphNode(bareRight,
-										MorphType.Suffix, null, null));
+								son = new MorphNode(bareLeft, MorphType.Prefix);
+								daughter = new MorphNode(bareRight,
+										MorphType.Suffix);
 
 							} else if (bareLeft == null) { // adulterer + -ous
-								node.setSon(new MorphNode(left, MorphType.Stem,
-										null, null));
-								node.setDaughter(new MorphNode(bareRight,
-										MorphType.Suffix, null, null));
+								son = new MorphNode(left, MorphType.Stem);
+								daughter = new MorphNode(bareRight,
+										MorphType.Suffix);
 
 							} else { // ambi- + sexual
-								node.setSon(new MorphNode(bareLeft,
-										MorphType.Prefix, null, null));
-								node.setDaughter(new MorphNode(right,
-										MorphType.Stem, null, null));
+								son = new MorphNode(bareLeft, MorphType.Prefix);
+								daughter = new MorphNode(right, MorphType.Stem);
 							}
 
-							morphNodeMap.put(word, node);
+							morphNodeMap.put(word, new MorphNode(word,
+									MorphType.Word, son, daughter));
 
 						});
 
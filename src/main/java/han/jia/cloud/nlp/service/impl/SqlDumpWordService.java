@@ -0,0 +1,427 @@
+package han.jia.cloud.nlp.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import han.jia.cloud.nlp.domain.Derivative;
+import han.jia.cloud.nlp.domain.Ending;
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.domain.LeftRight;
+import han.jia.cloud.nlp.domain.Prefix;
+import han.jia.cloud.nlp.domain.Word;
+import han.jia.cloud.nlp.service.WordService;
+
+/**
+ * It provides the same services as {@code WordServiceImpl}, reading the
+ * {@code COPY ... FROM stdin} blocks of the nlp.sql PostgreSQL dump directly
+ * instead of querying a database.
+ *
+ * <p>
+ * The whole dump is read into memory as bytes and scanned once for its COPY
+ * statements, without being decoded, so the file must fit in the heap along
+ * with the entities built from it. The rows of the six tables are then decoded
+ * and converted to entities in parallel, one task per table, each task
+ * decoding the rows of its own block one line at a time. No database, JPA or
+ * Spring context is needed:
+ *
+ * <pre>
+ * MorphParser parser = new MorphParser(new SqlDumpWordService(Paths.get("dbdump/nlp.sql")));
+ * </pre>
+ *
+ * @author Jiayun Han
+ *
+ */
+public class SqlDumpWordService implements WordService {
+
+	private static final Pattern COPY = Pattern.compile("^COPY (?:\\w+\\.)?(\\w+) \\(([^)]*)\\) FROM stdin;$");
+	private static final byte[] COPY_START = "COPY ".getBytes(StandardCharsets.US_ASCII);
+	private static final String END_OF_COPY = "\\.";
+	private static final String NULL = "\\N";
+
+	private final List<Word> words;
+	private final List<Ending> endings;
+	private final List<Prefix> prefixes;
+	private final List<Inflected> inflected;
+	private final List<Derivative> derivatives;
+	private final List<LeftRight> leftRights;
+
+	/**
+	 * Reads the tables out of the dump file
+	 *
+	 * @param dumpFile
+	 *            The PostgreSQL dump file, e.g. dbdump/nlp.sql
+	 * @throws IOException
+	 *             If the file cannot be read or misses any of the tables
+	 */
+	public SqlDumpWordService(Path dumpFile) throws IOException {
+
+		Map<String, Block> blocks = readBlocks(dumpFile);
+
+		CompletableFuture<List<Word>> words = parseAsync(blocks, "word", this::toWord);
+		CompletableFuture<List<Ending>> endings = parseAsync(blocks, "ending", this::toEnding);
+		CompletableFuture<List<Prefix>> prefixes = parseAsync(blocks, "prefix", this::toPrefix);
+		CompletableFuture<List<Inflected>> inflected = parseAsync(blocks, "inflected", this::toInflected);
+		CompletableFuture<List<Derivative>> derivatives = parseAsync(blocks, "derivative", this::toDerivative);
+		CompletableFuture<List<LeftRight>> leftRights = parseAsync(blocks, "son_daughter", this::toLeftRight);
+
+		try {
+			this.words = words.join();
+			this.endings = endings.join();
+			this.prefixes = prefixes.join();
+			this.inflected = inflected.join();
+			this.derivatives = derivatives.join();
+			this.leftRights = leftRights.join();
+		} catch (CompletionException e) {
+			throw new IOException("Malformed dump file " + dumpFile + ": " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	@Override
+	public Stream<Word> findAllWords() {
+		return words.stream();
+	}
+
+	@Override
+	public Stream<Ending> findAllEndings() {
+		return endings.stream();
+	}
+
+	@Override
+	public Stream<Prefix> findAllPrefixes() {
+		return prefixes.stream();
+	}
+
+	@Override
+	public Stream<Inflected> findAllInflected() {
+		return inflected.stream();
+	}
+
+	@Override
+	public Stream<Derivative> findAllDerivatives() {
+		return derivatives.stream();
+	}
+
+	@Override
+	public Stream<LeftRight> findAllLeftRights() {
+		return leftRights.stream();
+	}
+
+	/**
+	 * The undecoded rows of one table, from the line after its COPY statement
+	 * to the end-of-copy marker, with the column names of the statement
+	 */
+	private static class Block {
+
+		private final List<String> columns;
+		private final byte[] dump;
+		private final int start;
+
+		private Block(List<String> columns, byte[] dump, int start) {
+			this.columns = columns;
+			this.dump = dump;
+			this.start = start;
+		}
+
+		private int indexOf(String column) {
+			int index = columns.indexOf(column);
+			if (index < 0) {
+				throw new IllegalStateException("missing column " + column);
+			}
+			return index;
+		}
+	}
+
+	private static Map<String, Block> readBlocks(Path dumpFile) throws IOException {
+
+		byte[] dump = Files.readAllBytes(dumpFile);
+		Map<String, Block> blocks = new HashMap<>();
+
+		// only the lines starting with COPY are decoded; the rows are left to
+		// the task of their table
+		for (int pos = 0; pos < dump.length; pos = nextLine(dump, pos)) {
+			if (startsWith(dump, pos, COPY_START)) {
+				Matcher matcher = COPY.matcher(lineAt(dump, pos));
+				if (matcher.matches()) {
+					Block block = new Block(Arrays.asList(matcher.group(2).split("\\s*,\\s*")), dump,
+							nextLine(dump, pos));
+					blocks.put(matcher.group(1), block);
+				}
+			}
+		}
+
+		return blocks;
+	}
+
+	private static boolean startsWith(byte[] dump, int pos, byte[] prefix) {
+		if (dump.length - pos < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (dump[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int lineEnd(byte[] dump, int pos) {
+		while (pos < dump.length && dump[pos] != '\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int nextLine(byte[] dump, int pos) {
+		return Math.min(dump.length, lineEnd(dump, pos) + 1);
+	}
+
+	// the line at the position, without its terminator, as BufferedReader
+	// reads it
+	private static String lineAt(byte[] dump, int pos) {
+		int end = lineEnd(dump, pos);
+		if (end > pos && dump[end - 1] == '\r') {
+			end--;
+		}
+		return new String(dump, pos, end - pos, StandardCharsets.UTF_8);
+	}
+
+	private static <T> CompletableFuture<List<T>> parseAsync(Map<String, Block> blocks, String table,
+			Function<Block, Function<String[], T>> mapperFactory) throws IOException {
+
+		Block block = blocks.get(table);
+		if (block == null) {
+			throw new IOException("Table " + table + " not found in the dump");
+		}
+
+		return CompletableFuture.supplyAsync(() -> {
+			Function<String[], T> mapper = mapperFactory.apply(block);
+			List<T> entities = new ArrayList<>();
+			for (int pos = block.start; pos < block.dump.length; pos = nextLine(block.dump, pos)) {
+				String row = lineAt(block.dump, pos);
+				if (row.equals(END_OF_COPY)) {
+					break;
+				}
+				entities.add(mapper.apply(splitRow(row, block.columns.size())));
+			}
+			return entities;
+		});
+	}
+
+	/**
+	 * Splits a row of the text format of COPY into its unescaped fields
+	 */
+	private static String[] splitRow(String row, int columnCount) {
+
+		String[] fields = new String[columnCount];
+		int start = 0;
+		for (int i = 0; i < columnCount; i++) {
+			int end = row.indexOf('\t', start);
+			if (end < 0) {
+				end = row.length();
+			}
+			fields[i] = unescape(row.substring(start, end));
+			start = end + 1;
+		}
+		return fields;
+	}
+
+	/**
+	 * Undoes the escapes of the text format of COPY: the named escapes such as
+	 * \t, the bytes given in octal as \ooo or in hex as \xhh, and a backslash
+	 * before any other character, which stands for that character
+	 */
+	private static String unescape(String field) {
+
+		if (field.equals(NULL)) {
+			return null;
+		}
+
+		if (field.indexOf('\\') < 0) {
+			return field;
+		}
+
+		StringBuilder sb = new StringBuilder(field.length());
+		// the bytes of a run of octal and hex escapes, which may spell a UTF-8
+		// character together, decoded when the run ends
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int i = 0;
+		while (i < field.length()) {
+			char c = field.charAt(i++);
+			if (c != '\\' || i == field.length()) {
+				appendBytes(sb, bytes);
+				sb.append(c);
+				continue;
+			}
+
+			char next = field.charAt(i++);
+			int value = digit(next, 8);
+			if (value >= 0) {
+				for (int n = 1; n < 3 && i < field.length() && digit(field.charAt(i), 8) >= 0; n++) {
+					value = value * 8 + digit(field.charAt(i++), 8);
+				}
+				bytes.write(value & 0xFF);
+				continue;
+			}
+			if (next == 'x' && i < field.length() && digit(field.charAt(i), 16) >= 0) {
+				value = digit(field.charAt(i++), 16);
+				if (i < field.length() && digit(field.charAt(i), 16) >= 0) {
+					value = value * 16 + digit(field.charAt(i++), 16);
+				}
+				bytes.write(value);
+				continue;
+			}
+
+			appendBytes(sb, bytes);
+			switch (next) {
+			case 't':
+				sb.append('\t');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'v':
+				sb.append('\u000B');
+				break;
+			default:
+				sb.append(next);
+			}
+		}
+		appendBytes(sb, bytes);
+		return sb.toString();
+	}
+
+	// the value of an ASCII digit in the radix, 8 or 16, or -1
+	private static int digit(char c, int radix) {
+		if (c >= '0' && c <= '9') {
+			return c - '0' < radix ? c - '0' : -1;
+		}
+		if (radix == 16 && (c | 0x20) >= 'a' && (c | 0x20) <= 'f') {
+			return (c | 0x20) - 'a' + 10;
+		}
+		return -1;
+	}
+
+	private static void appendBytes(StringBuilder sb, ByteArrayOutputStream bytes) {
+		if (bytes.size() > 0) {
+			sb.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+			bytes.reset();
+		}
+	}
+
+	private static Integer toInteger(String field) {
+		return field == null ? null : Integer.valueOf(field);
+	}
+
+	private Function<String[], Word> toWord(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+		int splittable = block.indexOf("splittable");
+
+		return fields -> {
+			Word word = new Word();
+			word.setId(toInteger(fields[id]));
+			word.setName(fields[name]);
+			word.setSplittable("t".equals(fields[splittable]));
+			return word;
+		};
+	}
+
+	private Function<String[], Ending> toEnding(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+		int cutWays = block.indexOf("cut_ways");
+		int suffix = block.indexOf("suffix");
+		int type = block.indexOf("type");
+
+		return fields -> {
+			Ending ending = new Ending();
+			ending.setId(toInteger(fields[id]));
+			ending.setName(fields[name]);
+			ending.setCutWays(fields[cutWays]);
+			ending.setSuffix(fields[suffix]);
+			ending.setType(toInteger(fields[type]));
+			return ending;
+		};
+	}
+
+	private Function<String[], Prefix> toPrefix(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+
+		return fields -> {
+			Prefix prefix = new Prefix();
+			prefix.setId(toInteger(fields[id]));
+			prefix.setName(fields[name]);
+			return prefix;
+		};
+	}
+
+	private Function<String[], Inflected> toInflected(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+		int base = block.indexOf("base");
+		int inflection = block.indexOf("inflection");
+
+		return fields -> {
+			Inflected inflected = new Inflected();
+			inflected.setId(toInteger(fields[id]));
+			inflected.setName(fields[name]);
+			inflected.setBase(fields[base]);
+			inflected.setInflection(fields[inflection]);
+			return inflected;
+		};
+	}
+
+	private Function<String[], Derivative> toDerivative(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+		int derivatives = block.indexOf("derivatives");
+
+		return fields -> {
+			Derivative derivative = new Derivative();
+			derivative.setId(toInteger(fields[id]));
+			derivative.setName(fields[name]);
+			derivative.setDerivatives(fields[derivatives]);
+			return derivative;
+		};
+	}
+
+	private Function<String[], LeftRight> toLeftRight(Block block) {
+		int id = block.indexOf("id");
+		int name = block.indexOf("name");
+		int son = block.indexOf("son");
+		int daughter = block.indexOf("daughter");
+
+		return fields -> {
+			LeftRight leftRight = new LeftRight();
+			leftRight.setId(toInteger(fields[id]));
+			leftRight.setName(fields[name]);
+			leftRight.setLeft(fields[son]);
+			leftRight.setRight(fields[daughter]);
+			return leftRight;
+		};
+	}
+}
@@ -0,0 +1,56 @@
+package han.jia.cloud.nlp.util;
+
+/**
+ * An immutable snapshot of the counters of a {@code LookupCache}.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public final class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+
+	public CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return The number of entries removed for lack of room or for having
+	 *         expired
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The ratio of hits to lookups, or 1 if there has been no lookup
+	 */
+	public double hitRate() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", size=" + size
+				+ ", hitRate=" + String.format("%.4f", hitRate());
+	}
+}
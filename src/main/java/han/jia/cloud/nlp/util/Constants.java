@@ -25,6 +25,7 @@ public final class Constants {
 	public static final String ae = "ae";
 	public static final String an = "an";
 	public static final String ed = "ed";
+	public static final String en = "en";
 	public static final String er = "er";
 	public static final String es = "es";
 	public static final String fe = "fe";
@@ -1,40 +1,66 @@
 package han.jia.cloud.nlp.util;
 
 import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.ema.DerivativeGraph;
 import han.jia.cloud.nlp.ema.GraphNode;
+import han.jia.cloud.nlp.ema.InflectionEndingTrie;
 import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.ema.PrefixTrie;
 import han.jia.cloud.nlp.ema.SuffixObj;
+import han.jia.cloud.nlp.ema.SuffixTrie;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * An instance of this class holds the needed lookup tables. It is expensive to
  * create one so it must be created as a singleton.
  * 
+ * <p>
+ * The parser only reads the large tables through the {@code is*} and
+ * {@code find*} methods, which lets a subclass keep those tables off the
+ * heap.
+ * 
  * @author Jiayun Han
  *
  */
 public class Dictionary {
 
+	/**
+	 * The id of a string that is not in the symbol table
+	 */
+	public static final int NO_SYMBOL = -1;
+
 	private List<String> edErEstIng;
 	private List<String> esEnding;
 
 	private List<String> unsplittables;
 	private List<String> words;
 
+	// hash-based counterparts of the lists above, for membership checks
+	private StringSet unsplittableSet;
+	private StringSet wordSet;
+
 	private List<String> strongSuffixes;
+	private StringSet strongSuffixSet;
 
 	private List<String> cYs;
 	private List<String> vCCs;
 
+	// all the endings above in one trie, rebuilt whenever a list is set
+	private InflectionEndingTrie inflectionEndingTrie;
+
 	private Map<String, List<SuffixObj>> suffixTable;
+	private SuffixTrie suffixTrie;
 
 	private List<String> prefixes;
+	private PrefixTrie prefixTrie;
 	private List<String> affixes;
 
-	private Map<String, GraphNode> derivativeMap;
+	private DerivativeGraph derivativeGraph;
 
 	// inflected-str -> inflected-object
 	private Map<String, Inflected> inflectionTable;
@@ -46,12 +72,18 @@ public class Dictionary {
 	// for caching purpose
 	private Map<String, MorphNode> wordNodeMap;
 
+	// the symbol table, built on first use: the sorted affix symbols, then
+	// the sorted string pool
+	private volatile String[] affixSymbols;
+	private volatile String[] pooledSymbols;
+
 	public List<String> getEsEnding() {
 		return esEnding;
 	}
 
 	public void setEsEnding(String... ss) {
 		this.esEnding = Arrays.asList(ss);
+		this.inflectionEndingTrie = new InflectionEndingTrie(cYs, vCCs, edErEstIng, esEnding);
 	}
 
 	public List<String> getEdErEstIng() {
@@ -60,6 +92,7 @@ public class Dictionary {
 
 	public void setEdErEstIng(String... ss) {
 		this.edErEstIng = Arrays.asList(ss);
+		this.inflectionEndingTrie = new InflectionEndingTrie(cYs, vCCs, edErEstIng, esEnding);
 	}
 
 	public List<String> getcYs() {
@@ -68,6 +101,7 @@ public class Dictionary {
 
 	public void setcYs(List<String> cYs) {
 		this.cYs = cYs;
+		this.inflectionEndingTrie = new InflectionEndingTrie(cYs, vCCs, edErEstIng, esEnding);
 	}
 
 	public List<String> getvCCs() {
@@ -76,6 +110,18 @@ public class Dictionary {
 
 	public void setvCCs(List<String> vCCs) {
 		this.vCCs = vCCs;
+		this.inflectionEndingTrie = new InflectionEndingTrie(cYs, vCCs, edErEstIng, esEnding);
+	}
+
+	/**
+	 * Returns the right-to-left trie of the endings looked for by the
+	 * inflection checks: the consonant + y, the vowel + consonant + consonant,
+	 * the 'ed', 'er', 'est' and 'ing', the 's' and the 'es' endings
+	 * 
+	 * @return The trie of the inflection endings
+	 */
+	public InflectionEndingTrie getInflectionEndingTrie() {
+		return inflectionEndingTrie;
 	}
 
 	public List<String> getWords() {
@@ -84,6 +130,45 @@ public class Dictionary {
 
 	public void setWords(List<String> words) {
 		this.words = words;
+		this.wordSet = new StringSet(words);
+	}
+
+	/**
+	 * Checks whether the passed string is a known word, splittable or not
+	 * 
+	 * @param word
+	 *            The string to be checked
+	 * @return true if it is a known word; false otherwise
+	 */
+	public boolean isWord(String word) {
+		return wordSet.contains(word);
+	}
+
+	/**
+	 * Checks whether the string made of a span of chars followed by an extra
+	 * string is a known word, without creating that string
+	 * 
+	 * @param s
+	 *            The chars holding the span, e.g. 'hoping'
+	 * @param start
+	 *            The start of the span, inclusive, e.g. 0
+	 * @param end
+	 *            The end of the span, exclusive, e.g. 3
+	 * @param extra
+	 *            The string following the span, possibly empty, e.g. 'e'
+	 * @return true if the joined string is a known word; false otherwise
+	 */
+	public boolean isWord(CharSequence s, int start, int end, String extra) {
+		return wordSet.contains(s, start, end, extra);
+	}
+
+	/**
+	 * Returns the known words as a set for constant-time membership checks
+	 * 
+	 * @return The known words as a set
+	 */
+	public Set<String> getWordSet() {
+		return wordSet;
 	}
 
 	public List<String> getAffixes() {
@@ -94,12 +179,36 @@ public class Dictionary {
 		this.affixes = affixes;
 	}
 
-	public Map<String, GraphNode> getDerivativeMap() {
-		return derivativeMap;
+	public DerivativeGraph getDerivativeGraph() {
+		return derivativeGraph;
 	}
 
+	public void setDerivativeGraph(DerivativeGraph derivativeGraph) {
+		this.derivativeGraph = derivativeGraph;
+	}
+
+	/**
+	 * Compiles a graph of {@code GraphNode} objects into the derivative graph
+	 * 
+	 * @param derivativeMap
+	 *            The nodes keyed on their words
+	 */
 	public void setDerivativeMap(Map<String, GraphNode> derivativeMap) {
-		this.derivativeMap = derivativeMap;
+		this.derivativeGraph = DerivativeGraph.of(derivativeMap);
+	}
+
+	/**
+	 * Returns the root of a word according to the derivative dictionary
+	 * 
+	 * @param word
+	 *            The word whose root is to be found
+	 * 
+	 * @return {@literal null} if the word does not exist in the derivative
+	 *         dictionary, otherwise the entire word if the word has no stem or
+	 *         the root otherwise.
+	 */
+	public String findRoot(String word) {
+		return derivativeGraph.findRoot(word);
 	}
 
 	public Map<String, List<SuffixObj>> getSuffixTable() {
@@ -108,12 +217,33 @@ public class Dictionary {
 
 	public void setSuffixTable(Map<String, List<SuffixObj>> suffixTable) {
 		this.suffixTable = suffixTable;
+		this.suffixTrie = new SuffixTrie(suffixTable);
+	}
+
+	/**
+	 * Returns the right-to-left trie built from the keys of the suffix table
+	 * 
+	 * @return The right-to-left trie of the decomposable endings
+	 */
+	public SuffixTrie getSuffixTrie() {
+		return suffixTrie;
 	}
 
 	public Map<String, Inflected> getInflectionTable() {
 		return inflectionTable;
 	}
 
+	/**
+	 * Returns the entry of the inflection table of the passed word
+	 * 
+	 * @param word
+	 *            The inflected word, e.g. 'abaci'
+	 * @return The entry of the word or null if the word is not in the table
+	 */
+	public Inflected findInflected(String word) {
+		return inflectionTable.get(word);
+	}
+
 	public void setInflectionTable(Map<String, Inflected> inflectionTable) {
 		this.inflectionTable = inflectionTable;
 	}
@@ -124,6 +254,16 @@ public class Dictionary {
 
 	public void setPrefixes(List<String> prefixes) {
 		this.prefixes = prefixes;
+		this.prefixTrie = new PrefixTrie(prefixes);
+	}
+
+	/**
+	 * Returns the left-to-right trie built from the prefixes
+	 * 
+	 * @return The left-to-right trie of the prefixes
+	 */
+	public PrefixTrie getPrefixTrie() {
+		return prefixTrie;
 	}
 
 	public List<String> getUnsplittables() {
@@ -132,12 +272,36 @@ public class Dictionary {
 
 	public void setUnsplittables(List<String> unsplittables) {
 		this.unsplittables = unsplittables;
+		this.unsplittableSet = new StringSet(unsplittables);
+	}
+
+	/**
+	 * Checks whether the passed string is a word that must not be split
+	 * 
+	 * @param word
+	 *            The string to be checked
+	 * @return true if the word is unsplittable; false otherwise
+	 */
+	public boolean isUnsplittable(String word) {
+		return unsplittableSet.contains(word);
 	}
 
 	public Map<String, MorphNode> getMorphNodeMap() {
 		return morphNodeMap;
 	}
 
+	/**
+	 * Returns the known split of the passed word into its son and daughter
+	 * 
+	 * @param word
+	 *            The word whose split to be returned
+	 * @return The split of the word as a {@code MorphNode}, or null if the
+	 *         split of the word is not known
+	 */
+	public MorphNode findMorphNode(String word) {
+		return morphNodeMap.get(word);
+	}
+
 	public void setMorphNodeMap(Map<String, MorphNode> morphNodeMap) {
 		this.morphNodeMap = morphNodeMap;
 	}
@@ -156,5 +320,164 @@ public class Dictionary {
 
 	public void setStrongSuffixes(List<String> strongSuffixes) {
 		this.strongSuffixes = strongSuffixes;
+		this.strongSuffixSet = new StringSet(strongSuffixes);
+	}
+
+	/**
+	 * Checks whether the passed ending is a strong suffix
+	 * 
+	 * @param ending
+	 *            The ending to be checked
+	 * @return true if the ending is a strong suffix; false otherwise
+	 */
+	public boolean isStrongSuffix(String ending) {
+		return strongSuffixSet.contains(ending);
+	}
+
+	/**
+	 * Returns the id of a string in the symbol table of this dictionary, which
+	 * numbers the affixes and endings first, so that the most frequent
+	 * morphemes get the smallest ids, and then the strings of the large
+	 * tables in the order of the pool of a {@code MappedDictionary} image.
+	 * The ids only depend on the contents of the tables, so a dictionary and
+	 * an image made out of it agree on them.
+	 * 
+	 * @param s
+	 *            The string to be looked up, e.g. a morpheme
+	 * @return The id of the string, or {@link #NO_SYMBOL} if it is not in the
+	 *         table
+	 */
+	public int getSymbolId(String s) {
+
+		String[] affixes = affixSymbols();
+		int id = Arrays.binarySearch(affixes, s);
+		if (id >= 0) {
+			return id;
+		}
+
+		id = pooledIdOf(s);
+		return id < 0 ? NO_SYMBOL : affixes.length + id;
+	}
+
+	/**
+	 * Returns the string of an id of the symbol table of this dictionary
+	 * 
+	 * @param id
+	 *            The id of the string
+	 * @return The string of the id
+	 * @throws IllegalArgumentException
+	 *             If the id is not in the table
+	 */
+	public String getSymbol(int id) {
+
+		String[] affixes = affixSymbols();
+		if (id >= 0 && id < affixes.length) {
+			return affixes[id];
+		}
+
+		int pooled = id - affixes.length;
+		if (id < 0 || pooled >= pooledCount()) {
+			throw new IllegalArgumentException("No symbol of id " + id);
+		}
+		return pooledSymbol(pooled);
+	}
+
+	/**
+	 * @return The number of strings in the symbol table of this dictionary
+	 */
+	public int getSymbolCount() {
+		return affixSymbols().length + pooledCount();
+	}
+
+	private String[] affixSymbols() {
+		String[] symbols = affixSymbols;
+		if (symbols == null) {
+			Set<String> affixes = new HashSet<>();
+			affixes.addAll(edErEstIng);
+			affixes.addAll(esEnding);
+			affixes.addAll(strongSuffixes);
+			affixes.addAll(prefixes);
+			affixes.addAll(this.affixes);
+			for (Map.Entry<String, List<SuffixObj>> entry : suffixTable.entrySet()) {
+				affixes.add(entry.getKey());
+				for (SuffixObj suffix : entry.getValue()) {
+					affixes.add(suffix.getSuffix());
+				}
+			}
+			affixes.remove(null);
+			symbols = affixes.toArray(new String[affixes.size()]);
+			Arrays.sort(symbols);
+			affixSymbols = symbols;
+		}
+		return symbols;
+	}
+
+	private String[] pooledSymbols() {
+		String[] symbols = pooledSymbols;
+		if (symbols == null) {
+			symbols = stringPool(this);
+			pooledSymbols = symbols;
+		}
+		return symbols;
+	}
+
+	/**
+	 * Returns the id of a string in the pool of the large tables, or a
+	 * negative number if it is not in the pool
+	 */
+	int pooledIdOf(String s) {
+		return Arrays.binarySearch(pooledSymbols(), s);
+	}
+
+	/**
+	 * Returns the string of an id of the pool of the large tables
+	 */
+	String pooledSymbol(int id) {
+		return pooledSymbols()[id];
+	}
+
+	/**
+	 * Returns the number of strings in the pool of the large tables
+	 */
+	int pooledCount() {
+		return pooledSymbols().length;
+	}
+
+	/**
+	 * Collects the strings of the words, inflections, derivative roots and
+	 * son-daughter splits of a dictionary into a pool, sorted by
+	 * String.compareTo
+	 */
+	static String[] stringPool(Dictionary dictionary) {
+
+		Set<String> strings = new HashSet<>();
+		strings.addAll(dictionary.getWords());
+		strings.addAll(dictionary.getUnsplittables());
+		for (Inflected inflected : dictionary.getInflectionTable().values()) {
+			strings.add(inflected.getName());
+			strings.add(inflected.getBase());
+			strings.add(inflected.getInflection());
+		}
+		DerivativeGraph graph = dictionary.getDerivativeGraph();
+		for (int id = 0; id < graph.size(); id++) {
+			strings.add(graph.getWord(id));
+		}
+		for (Map.Entry<String, MorphNode> entry : dictionary.getMorphNodeMap().entrySet()) {
+			strings.add(entry.getKey());
+			collectTexts(entry.getValue(), strings);
+		}
+		strings.remove(null);
+
+		String[] pool = strings.toArray(new String[strings.size()]);
+		Arrays.sort(pool);
+		return pool;
+	}
+
+	private static void collectTexts(MorphNode node, Set<String> strings) {
+		if (node != null) {
+			strings.add(node.getText());
+			collectTexts(node.getSon(), strings);
+			collectTexts(node.getDaughter(), strings);
+		}
 	}
 }
@@ -0,0 +1,390 @@
+package han.jia.cloud.nlp.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.ema.DerivativeGraph;
+import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.ema.SuffixObj;
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.WordService;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+
+/**
+ * Writes a fully built {@code Dictionary} into a versioned binary snapshot and
+ * reads it back, so that a dictionary can be loaded from a file without any
+ * database, JPA or Spring context.
+ *
+ * <p>
+ * Usage example:
+ *
+ * <pre>
+ * // once, where the database is reachable
+ * java han.jia.cloud.nlp.util.DictionarySnapshot ema.dict
+ *
+ * // at startup
+ * Dictionary dictionary = DictionarySnapshot.load(Paths.get("ema.dict"));
+ * MorphParser parser = new MorphParser(dictionary);
+ * </pre>
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class DictionarySnapshot {
+
+	private final static Logger logger = LoggerFactory.getLogger(DictionarySnapshot.class);
+
+	// 'EMAD'
+	private static final int MAGIC = 0x454D4144;
+
+	/**
+	 * The version of the snapshot format, to be increased whenever the format
+	 * changes
+	 */
+	public static final int VERSION = 3;
+
+	private DictionarySnapshot() {
+	}
+
+	/**
+	 * Builds the dictionary through the Spring context, or out of the dump file
+	 * if one is given, and saves it as a snapshot
+	 *
+	 * @param args
+	 *            The path of the snapshot file to be written, optionally
+	 *            followed by the path of the nlp.sql dump file
+	 * @throws IOException
+	 *             If the context cannot be loaded or the files read or written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1 && args.length != 2) {
+			System.err.println("Usage: DictionarySnapshot <snapshot-file> [<nlp.sql>]");
+			System.exit(1);
+		}
+
+		WordService wordService = args.length == 2 ? new SqlDumpWordService(Paths.get(args[1]))
+				: SpringAppContextCreator.getAppContext().getBean(WordService.class);
+		Dictionary dictionary = Singleton.INSTANCE.getDictionary(wordService);
+
+		save(dictionary, Paths.get(args[0]));
+		logger.info("Dictionary snapshot written to {}", args[0]);
+	}
+
+	/**
+	 * Saves the dictionary into a snapshot file
+	 *
+	 * @param dictionary
+	 *            The dictionary to be saved
+	 * @param file
+	 *            The snapshot file to be written
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void save(Dictionary dictionary, Path file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			write(dictionary, out);
+		}
+	}
+
+	/**
+	 * Loads a dictionary from a snapshot file
+	 *
+	 * @param file
+	 *            The snapshot file to be read
+	 * @return The loaded dictionary
+	 * @throws IOException
+	 *             If the file cannot be read, or is not a snapshot of the
+	 *             supported version
+	 */
+	public static Dictionary load(Path file) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Writes the dictionary as a snapshot into the stream
+	 *
+	 * @param dictionary
+	 *            The dictionary to be written
+	 * @param stream
+	 *            The stream to write to, which is flushed but not closed
+	 * @throws IOException
+	 *             If the stream cannot be written
+	 */
+	public static void write(Dictionary dictionary, OutputStream stream) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		writeStrings(out, dictionary.getUnsplittables());
+		writeStrings(out, dictionary.getWords());
+
+		writeAffixTables(out, dictionary);
+		writeInflectionTable(out, dictionary.getInflectionTable());
+		writeDerivativeGraph(out, dictionary.getDerivativeGraph());
+		writeMorphNodeMap(out, dictionary.getMorphNodeMap());
+
+		out.flush();
+	}
+
+	/**
+	 * Reads a dictionary from a snapshot stream
+	 *
+	 * @param stream
+	 *            The stream to read from, which is not closed
+	 * @return The dictionary read
+	 * @throws IOException
+	 *             If the stream cannot be read, or does not hold a snapshot of
+	 *             the supported version
+	 */
+	public static Dictionary read(InputStream stream) throws IOException {
+
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a dictionary snapshot");
+		}
+
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported dictionary snapshot version " + version + ", expected " + VERSION);
+		}
+
+		Dictionary dictionary = new Dictionary();
+
+		dictionary.setUnsplittables(readStrings(in));
+		dictionary.setWords(readStrings(in));
+
+		readAffixTables(in, dictionary);
+		dictionary.setInflectionTable(readInflectionTable(in));
+		dictionary.setDerivativeGraph(readDerivativeGraph(in));
+		dictionary.setMorphNodeMap(readMorphNodeMap(in));
+
+		return dictionary;
+	}
+
+	/**
+	 * Writes the small tables of the dictionary, i.e. all but the word lists
+	 * and the inflection, derivative and morph-node tables
+	 */
+	static void writeAffixTables(DataOutputStream out, Dictionary dictionary) throws IOException {
+		writeStrings(out, dictionary.getEdErEstIng());
+		writeStrings(out, dictionary.getEsEnding());
+		writeStrings(out, dictionary.getStrongSuffixes());
+		writeStrings(out, dictionary.getcYs());
+		writeStrings(out, dictionary.getvCCs());
+		writeStrings(out, dictionary.getPrefixes());
+		writeStrings(out, dictionary.getAffixes());
+		writeSuffixTable(out, dictionary.getSuffixTable());
+	}
+
+	/**
+	 * Reads the small tables written by
+	 * {@link #writeAffixTables(DataOutputStream, Dictionary)} into the
+	 * dictionary
+	 */
+	static void readAffixTables(DataInputStream in, Dictionary dictionary) throws IOException {
+		List<String> edErEstIng = readStrings(in);
+		dictionary.setEdErEstIng(edErEstIng.toArray(new String[edErEstIng.size()]));
+		List<String> esEnding = readStrings(in);
+		dictionary.setEsEnding(esEnding.toArray(new String[esEnding.size()]));
+
+		dictionary.setStrongSuffixes(readStrings(in));
+		dictionary.setcYs(readStrings(in));
+		dictionary.setvCCs(readStrings(in));
+		dictionary.setPrefixes(readStrings(in));
+		dictionary.setAffixes(readStrings(in));
+		dictionary.setSuffixTable(readSuffixTable(in));
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			writeString(out, s);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<String> strings = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+
+	private static void writeSuffixTable(DataOutputStream out, Map<String, List<SuffixObj>> suffixTable)
+			throws IOException {
+
+		// the iteration order is the priority of the endings, keep it
+		out.writeInt(suffixTable.size());
+		for (Map.Entry<String, List<SuffixObj>> entry : suffixTable.entrySet()) {
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (SuffixObj suffixObj : entry.getValue()) {
+				out.writeInt(suffixObj.getCutPosition());
+				writeString(out, suffixObj.getAddon());
+				writeString(out, suffixObj.getSuffix());
+			}
+		}
+	}
+
+	private static Map<String, List<SuffixObj>> readSuffixTable(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, List<SuffixObj>> suffixTable = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			String ending = readString(in);
+			int count = in.readInt();
+			List<SuffixObj> suffixObjs = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				suffixObjs.add(new SuffixObj(in.readInt(), readString(in), readString(in)));
+			}
+			suffixTable.put(ending, suffixObjs);
+		}
+		return suffixTable;
+	}
+
+	private static void writeInflectionTable(DataOutputStream out, Map<String, Inflected> inflectionTable)
+			throws IOException {
+		out.writeInt(inflectionTable.size());
+		for (Inflected inflected : inflectionTable.values()) {
+			writeString(out, inflected.getName());
+			writeString(out, inflected.getBase());
+			writeString(out, inflected.getInflection());
+		}
+	}
+
+	private static Map<String, Inflected> readInflectionTable(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, Inflected> inflectionTable = new HashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			Inflected inflected = new Inflected();
+			inflected.setName(readString(in));
+			inflected.setBase(readString(in));
+			inflected.setInflection(readString(in));
+			inflectionTable.put(inflected.getName(), inflected);
+		}
+		return inflectionTable;
+	}
+
+	private static void writeDerivativeGraph(DataOutputStream out, DerivativeGraph graph) throws IOException {
+
+		int size = graph.size();
+		out.writeInt(size);
+		for (int id = 0; id < size; id++) {
+			out.writeUTF(graph.getWord(id));
+			out.writeInt(graph.getStemId(id));
+			out.writeInt(graph.getRootId(id));
+
+			int[] derivatives = graph.getDerivativeIds(id);
+			out.writeInt(derivatives.length);
+			for (int derivative : derivatives) {
+				out.writeInt(derivative);
+			}
+		}
+	}
+
+	private static DerivativeGraph readDerivativeGraph(DataInputStream in) throws IOException {
+
+		int size = in.readInt();
+		String[] words = new String[size];
+		int[] stems = new int[size];
+		int[] roots = new int[size];
+		int[] offsets = new int[size + 1];
+		int[] derivatives = new int[16];
+
+		int next = 0;
+		for (int id = 0; id < size; id++) {
+			words[id] = in.readUTF();
+			stems[id] = in.readInt();
+			roots[id] = in.readInt();
+
+			offsets[id] = next;
+			int count = in.readInt();
+			if (next + count > derivatives.length) {
+				derivatives = Arrays.copyOf(derivatives, Math.max(next + count, derivatives.length * 2));
+			}
+			for (int i = 0; i < count; i++) {
+				derivatives[next++] = in.readInt();
+			}
+		}
+		offsets[size] = next;
+
+		return new DerivativeGraph(words, stems, roots, offsets, Arrays.copyOf(derivatives, next));
+	}
+
+	private static void writeMorphNodeMap(DataOutputStream out, Map<String, MorphNode> morphNodeMap)
+			throws IOException {
+		out.writeInt(morphNodeMap.size());
+		for (Map.Entry<String, MorphNode> entry : morphNodeMap.entrySet()) {
+			writeString(out, entry.getKey());
+			writeMorphNode(out, entry.getValue());
+		}
+	}
+
+	// preorder: text, type, whether it has children, then son and daughter
+	private static void writeMorphNode(DataOutputStream out, MorphNode node) throws IOException {
+		writeString(out, node.getText());
+		out.writeByte(node.getType().ordinal());
+
+		boolean hasChildren = node.getSon() != null && node.getDaughter() != null;
+		out.writeBoolean(hasChildren);
+		if (hasChildren) {
+			writeMorphNode(out, node.getSon());
+			writeMorphNode(out, node.getDaughter());
+		}
+	}
+
+	private static Map<String, MorphNode> readMorphNodeMap(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, MorphNode> morphNodeMap = new HashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			morphNodeMap.put(readString(in), readMorphNode(in));
+		}
+		return morphNodeMap;
+	}
+
+	private static MorphNode readMorphNode(DataInputStream in) throws IOException {
+		String text = readString(in);
+		MorphType type = MorphType.values()[in.readByte()];
+
+		if (in.readBoolean()) {
+			MorphNode son = readMorphNode(in);
+			MorphNode daughter = readMorphNode(in);
+			return new MorphNode(text, type, son, daughter);
+		}
+		return new MorphNode(text, type);
+	}
+}
@@ -0,0 +1,117 @@
+package han.jia.cloud.nlp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values, such as latencies in
+ * nanoseconds.
+ * 
+ * <p>
+ * The values are counted in buckets whose bounds are the powers of 2, so
+ * recording a value is a few atomic increments and the footprint is fixed. The
+ * count, the mean and the maximum are exact, while a percentile is the upper
+ * bound of the bucket it falls in, i.e. it is overestimated by less than a
+ * factor of 2.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public final class Histogram {
+
+	// bucket i holds the values v with 2^(i-1) <= v < 2^i, bucket 0 holds 0
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value
+	 * 
+	 * @param value
+	 *            The value, negative values being taken as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// retry
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return The mean of the values, or 0 if none has been recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns an upper bound of a percentile of the values
+	 * 
+	 * @param percent
+	 *            The percentile, from 0 to 100
+	 * @return The upper bound of the bucket holding the percentile, capped by
+	 *         the maximum, or 0 if no value has been recorded
+	 */
+	public long getPercentile(double percent) {
+
+		long n = 0;
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(n * percent / 100.0);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				long upper = i == 0 ? 0 : i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+				return Math.min(upper, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all the values recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + ", p50=" + getPercentile(50)
+				+ ", p99=" + getPercentile(99) + ", max=" + getMax();
+	}
+}
@@ -0,0 +1,85 @@
+package han.jia.cloud.nlp.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cache of lookup results, such as the parse results kept by
+ * {@code MorphParser}.
+ * 
+ * <p>
+ * Implementations must be safe to be used by many threads at the same time.
+ * A {@code null} value is never stored; {@link #get(Object)} returns
+ * {@code null} only for a missing entry.
+ * 
+ * @author Jiayun Han
+ *
+ * @param <K>
+ *            The type of the keys
+ * @param <V>
+ *            The type of the values
+ */
+public interface LookupCache<K, V> {
+
+	/**
+	 * Returns the cached value of the key
+	 * 
+	 * @param key
+	 *            The key whose value to be returned
+	 * @return The cached value or null if there is none
+	 */
+	V get(K key);
+
+	/**
+	 * Caches the value of the key, possibly evicting other entries
+	 * 
+	 * @param key
+	 *            The key of the value
+	 * @param value
+	 *            The value to be cached, which must not be null
+	 */
+	void put(K key, V value);
+
+	/**
+	 * Discards all entries of this cache
+	 */
+	void clear();
+
+	/**
+	 * @return The number of entries currently cached
+	 */
+	long size();
+
+	/**
+	 * @return A snapshot of the counters of this cache
+	 */
+	CacheStats stats();
+
+	/**
+	 * Returns the keys most worth keeping, e.g. to warm up another cache
+	 * before it replaces this one
+	 * 
+	 * @param limit
+	 *            The maximum number of keys to be returned
+	 * @return Up to limit keys, the hottest first; none by default
+	 */
+	default List<K> hotKeys(int limit) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Creates the caches used by a parser, which makes the caching policy
+	 * pluggable.
+	 */
+	interface Factory {
+
+		/**
+		 * Creates a new, empty cache
+		 * 
+		 * @param name
+		 *            The name of the cache, e.g. for reporting its statistics
+		 * @return A new cache
+		 */
+		<K, V> LookupCache<K, V> newCache(String name);
+	}
+}
@@ -0,0 +1,588 @@
+package han.jia.cloud.nlp.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.ema.DerivativeGraph;
+import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.enums.MorphType;
+
+/**
+ * A read-only {@code Dictionary} whose large tables are read straight from a
+ * memory-mapped image file instead of being held on the heap.
+ *
+ * <p>
+ * All the strings of the words, inflections, derivative roots and son-daughter
+ * splits are kept in one sorted pool, so that a string is identified by its
+ * index in the pool and is found by a binary search. Each table is then an
+ * array indexed by that id. As the pages of a mapped file live in the page
+ * cache of the operating system, many processes mapping the same image share
+ * a single copy of it. Only the small affix tables are loaded on the heap.
+ *
+ * <p>
+ * The image is made out of a dictionary snapshot:
+ *
+ * <pre>
+ * java han.jia.cloud.nlp.util.MappedDictionary ema.dict ema.img
+ *
+ * Dictionary dictionary = MappedDictionary.open(Paths.get("ema.img"));
+ * </pre>
+ *
+ * <p>
+ * The methods returning the large tables as collections build them on the
+ * heap out of the image on each call, for the tools copying a dictionary; the
+ * parser only uses the lookups.
+ *
+ * @author Jiayun Han
+ *
+ */
+public class MappedDictionary extends Dictionary {
+
+	private final static Logger logger = LoggerFactory.getLogger(MappedDictionary.class);
+
+	// 'EMAM'
+	private static final int MAGIC = 0x454D414D;
+
+	/**
+	 * The version of the image format, to be increased whenever the format
+	 * changes
+	 */
+	public static final int VERSION = 2;
+
+	private static final int NONE = -1;
+
+	private static final byte WORD = 1;
+	private static final byte UNSPLITTABLE = 2;
+	private static final byte IN_GRAPH = 4;
+
+	// header: magic, version, count, then the positions of the sections
+	private static final int HEADER_SIZE = 4 * 14;
+
+	private final ByteBuffer image;
+	private final int count;
+
+	// section positions, in bytes from the start of the image
+	private final int offsetsPos;
+	private final int charsPos;
+	private final int flagsPos;
+	private final int basesPos;
+	private final int inflectionsPos;
+	private final int rootsPos;
+	private final int splitsPos;
+	private final int stemsPos;
+	private final int derivativeOffsetsPos;
+	private final int derivativesPos;
+	private final int nodesPos;
+
+	private MappedDictionary(ByteBuffer image) throws IOException {
+
+		this.image = image;
+		if (image.getInt(0) != MAGIC) {
+			throw new IOException("Not a dictionary image");
+		}
+
+		int version = image.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported dictionary image version " + version + ", expected " + VERSION);
+		}
+
+		count = image.getInt(8);
+		offsetsPos = image.getInt(12);
+		charsPos = image.getInt(16);
+		flagsPos = image.getInt(20);
+		basesPos = image.getInt(24);
+		inflectionsPos = image.getInt(28);
+		rootsPos = image.getInt(32);
+		splitsPos = image.getInt(36);
+		stemsPos = image.getInt(40);
+		derivativeOffsetsPos = image.getInt(44);
+		derivativesPos = image.getInt(48);
+		nodesPos = image.getInt(52);
+
+		// the small tables follow the nodes, prefixed by their length
+		int affixesPos = nodesPos + image.getInt(nodesPos - 4);
+		byte[] affixes = new byte[image.getInt(affixesPos)];
+		ByteBuffer view = image.duplicate();
+		view.position(affixesPos + 4);
+		view.get(affixes);
+		DictionarySnapshot.readAffixTables(new DataInputStream(new ByteArrayInputStream(affixes)), this);
+	}
+
+	/**
+	 * Maps an image file into memory
+	 *
+	 * @param file
+	 *            The image file
+	 * @return The dictionary backed by the mapped file
+	 * @throws IOException
+	 *             If the file cannot be mapped, or is not an image of the
+	 *             supported version
+	 */
+	public static MappedDictionary open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MappedDictionary(buffer);
+		}
+	}
+
+	/**
+	 * Converts a dictionary snapshot into an image
+	 *
+	 * @param args
+	 *            The path of the snapshot to be read and of the image to be
+	 *            written
+	 * @throws IOException
+	 *             If the snapshot cannot be read or the image written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 2) {
+			System.err.println("Usage: MappedDictionary <snapshot-file> <image-file>");
+			System.exit(1);
+		}
+
+		save(DictionarySnapshot.load(Paths.get(args[0])), Paths.get(args[1]));
+		logger.info("Dictionary image written to {}", args[1]);
+	}
+
+	/**
+	 * Writes the image of a dictionary built on the heap
+	 *
+	 * @param dictionary
+	 *            The dictionary to be written
+	 * @param file
+	 *            The image file to be written
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void save(Dictionary dictionary, Path file) throws IOException {
+
+		// the string pool, sorted by String.compareTo as searched by lookups
+		String[] pool = stringPool(dictionary);
+		Map<String, Integer> ids = new HashMap<>(pool.length * 2);
+		for (int i = 0; i < pool.length; i++) {
+			ids.put(pool[i], i);
+		}
+
+		int n = pool.length;
+		int[] offsets = new int[n + 1];
+		StringBuilder chars = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			offsets[i] = chars.length();
+			chars.append(pool[i]);
+		}
+		offsets[n] = chars.length();
+
+		byte[] flags = new byte[n];
+		for (String word : dictionary.getWords()) {
+			flags[ids.get(word)] |= WORD;
+		}
+		for (String word : dictionary.getUnsplittables()) {
+			flags[ids.get(word)] |= UNSPLITTABLE;
+		}
+
+		int[] bases = filled(n);
+		int[] inflections = filled(n);
+		for (Inflected inflected : dictionary.getInflectionTable().values()) {
+			int id = ids.get(inflected.getName());
+			bases[id] = idOf(ids, inflected.getBase());
+			inflections[id] = idOf(ids, inflected.getInflection());
+		}
+
+		// the graph, with its ids mapped to pool ids and its derivatives in
+		// the same compressed rows
+		int[] roots = filled(n);
+		int[] stems = filled(n);
+		int[] derivativeOffsets = new int[n + 1];
+		DerivativeGraph graph = dictionary.getDerivativeGraph();
+		int[] derivativeCounts = new int[n];
+		for (int id = 0; id < graph.size(); id++) {
+			int pooled = ids.get(graph.getWord(id));
+			flags[pooled] |= IN_GRAPH;
+			if (graph.getRootId(id) != DerivativeGraph.NONE) {
+				roots[pooled] = ids.get(graph.getWord(graph.getRootId(id)));
+			}
+			if (graph.getStemId(id) != DerivativeGraph.NONE) {
+				stems[pooled] = ids.get(graph.getWord(graph.getStemId(id)));
+			}
+			derivativeCounts[pooled] = graph.getDerivativeIds(id).length;
+		}
+		for (int i = 0; i < n; i++) {
+			derivativeOffsets[i + 1] = derivativeOffsets[i] + derivativeCounts[i];
+		}
+		int[] derivatives = new int[derivativeOffsets[n]];
+		for (int id = 0; id < graph.size(); id++) {
+			int at = derivativeOffsets[ids.get(graph.getWord(id))];
+			for (int derivative : graph.getDerivativeIds(id)) {
+				derivatives[at++] = ids.get(graph.getWord(derivative));
+			}
+		}
+
+		int[] splits = filled(n);
+		ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+		DataOutputStream nodes = new DataOutputStream(nodeBytes);
+		for (Map.Entry<String, MorphNode> entry : dictionary.getMorphNodeMap().entrySet()) {
+			splits[ids.get(entry.getKey())] = nodes.size();
+			writeNode(nodes, entry.getValue(), ids);
+		}
+
+		ByteArrayOutputStream affixBytes = new ByteArrayOutputStream();
+		DictionarySnapshot.writeAffixTables(new DataOutputStream(affixBytes), dictionary);
+
+		int offsetsPos = HEADER_SIZE;
+		int charsPos = offsetsPos + 4 * (n + 1);
+		int flagsPos = charsPos + 2 * chars.length();
+		int basesPos = flagsPos + n;
+		int inflectionsPos = basesPos + 4 * n;
+		int rootsPos = inflectionsPos + 4 * n;
+		int splitsPos = rootsPos + 4 * n;
+		int stemsPos = splitsPos + 4 * n;
+		int derivativeOffsetsPos = stemsPos + 4 * n;
+		int derivativesPos = derivativeOffsetsPos + 4 * (n + 1);
+		// the length of the nodes is written right before them
+		int nodesPos = derivativesPos + 4 * derivatives.length + 4;
+
+		try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+			DataOutputStream out = new DataOutputStream(stream);
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(offsetsPos);
+			out.writeInt(charsPos);
+			out.writeInt(flagsPos);
+			out.writeInt(basesPos);
+			out.writeInt(inflectionsPos);
+			out.writeInt(rootsPos);
+			out.writeInt(splitsPos);
+			out.writeInt(stemsPos);
+			out.writeInt(derivativeOffsetsPos);
+			out.writeInt(derivativesPos);
+			out.writeInt(nodesPos);
+
+			writeInts(out, offsets);
+			out.writeChars(chars.toString());
+			out.write(flags);
+			writeInts(out, bases);
+			writeInts(out, inflections);
+			writeInts(out, roots);
+			writeInts(out, splits);
+			writeInts(out, stems);
+			writeInts(out, derivativeOffsets);
+			writeInts(out, derivatives);
+
+			out.writeInt(nodeBytes.size());
+			nodeBytes.writeTo(out);
+
+			out.writeInt(affixBytes.size());
+			affixBytes.writeTo(out);
+
+			out.flush();
+		}
+	}
+
+	private static int[] filled(int n) {
+		int[] ints = new int[n];
+		Arrays.fill(ints, NONE);
+		return ints;
+	}
+
+	private static int idOf(Map<String, Integer> ids, String s) {
+		return s == null ? NONE : ids.get(s);
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+		for (int i : ints) {
+			out.writeInt(i);
+		}
+	}
+
+	// preorder: text id, type, whether it has children, then son and daughter
+	private static void writeNode(DataOutputStream out, MorphNode node, Map<String, Integer> ids)
+			throws IOException {
+		out.writeInt(idOf(ids, node.getText()));
+		out.writeByte(node.getType().ordinal());
+
+		boolean hasChildren = node.getSon() != null && node.getDaughter() != null;
+		out.writeBoolean(hasChildren);
+		if (hasChildren) {
+			writeNode(out, node.getSon(), ids);
+			writeNode(out, node.getDaughter(), ids);
+		}
+	}
+
+	/**
+	 * Returns the id of the string in the pool, found by binary search
+	 */
+	private int idOf(String s) {
+		if (s == null) {
+			return NONE;
+		}
+		return idOf(s, 0, s.length(), Constants.EMPTY_STR);
+	}
+
+	/**
+	 * Returns the id of the string made of a span of chars followed by an
+	 * extra string, found by binary search without creating that string
+	 */
+	private int idOf(CharSequence s, int start, int end, String extra) {
+
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare(mid, s, start, end, extra);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return NONE;
+	}
+
+	// compares the pooled string of the id with the joined string, as
+	// String.compareTo does
+	private int compare(int id, CharSequence s, int start, int end, String extra) {
+		int from = image.getInt(offsetsPos + 4 * id);
+		int length = image.getInt(offsetsPos + 4 * (id + 1)) - from;
+		int at = charsPos + 2 * from;
+
+		int span = end - start;
+		int other = span + extra.length();
+		int min = Math.min(length, other);
+		for (int i = 0; i < min; i++) {
+			char c = image.getChar(at + 2 * i);
+			char d = i < span ? s.charAt(start + i) : extra.charAt(i - span);
+			if (c != d) {
+				return c - d;
+			}
+		}
+		return length - other;
+	}
+
+	private String stringOf(int id) {
+		int start = image.getInt(offsetsPos + 4 * id);
+		int end = image.getInt(offsetsPos + 4 * (id + 1));
+
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = image.getChar(charsPos + 2 * (start + i));
+		}
+		return new String(chars);
+	}
+
+	private int intAt(int sectionPos, int id) {
+		return image.getInt(sectionPos + 4 * id);
+	}
+
+	/**
+	 * @return The number of strings in the pool of this image
+	 */
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public boolean isWord(String word) {
+		int id = idOf(word);
+		return id != NONE && (image.get(flagsPos + id) & WORD) != 0;
+	}
+
+	@Override
+	public boolean isWord(CharSequence s, int start, int end, String extra) {
+		int id = idOf(s, start, end, extra);
+		return id != NONE && (image.get(flagsPos + id) & WORD) != 0;
+	}
+
+	@Override
+	public boolean isUnsplittable(String word) {
+		int id = idOf(word);
+		return id != NONE && (image.get(flagsPos + id) & UNSPLITTABLE) != 0;
+	}
+
+	@Override
+	public String findRoot(String word) {
+		int id = idOf(word);
+		if (id == NONE) {
+			return null;
+		}
+
+		int root = intAt(rootsPos, id);
+		return root == NONE ? null : stringOf(root);
+	}
+
+	@Override
+	public Inflected findInflected(String word) {
+		int id = idOf(word);
+		if (id == NONE || intAt(basesPos, id) == NONE) {
+			return null;
+		}
+
+		return inflectedOf(id, word);
+	}
+
+	private Inflected inflectedOf(int id, String word) {
+		Inflected inflected = new Inflected();
+		inflected.setName(word);
+		inflected.setBase(stringOf(intAt(basesPos, id)));
+
+		int inflection = intAt(inflectionsPos, id);
+		inflected.setInflection(inflection == NONE ? null : stringOf(inflection));
+		return inflected;
+	}
+
+	@Override
+	public MorphNode findMorphNode(String word) {
+		int id = idOf(word);
+		if (id == NONE) {
+			return null;
+		}
+
+		int offset = intAt(splitsPos, id);
+		return offset == NONE ? null : readNode(new int[] { nodesPos + offset });
+	}
+
+	private MorphNode readNode(int[] at) {
+		String text = stringOf(image.getInt(at[0]));
+		MorphType type = MorphType.values()[image.get(at[0] + 4)];
+		boolean hasChildren = image.get(at[0] + 5) != 0;
+		at[0] += 6;
+
+		if (hasChildren) {
+			MorphNode son = readNode(at);
+			MorphNode daughter = readNode(at);
+			return new MorphNode(text, type, son, daughter);
+		}
+		return new MorphNode(text, type);
+	}
+
+	@Override
+	int pooledIdOf(String s) {
+		return idOf(s);
+	}
+
+	@Override
+	String pooledSymbol(int id) {
+		return stringOf(id);
+	}
+
+	@Override
+	int pooledCount() {
+		return count;
+	}
+
+	@Override
+	public List<String> getWords() {
+		return stringsFlagged(WORD);
+	}
+
+	@Override
+	public Set<String> getWordSet() {
+		return new StringSet(getWords());
+	}
+
+	@Override
+	public List<String> getUnsplittables() {
+		return stringsFlagged(UNSPLITTABLE);
+	}
+
+	private List<String> stringsFlagged(byte flag) {
+		List<String> strings = new ArrayList<>();
+		for (int id = 0; id < count; id++) {
+			if ((image.get(flagsPos + id) & flag) != 0) {
+				strings.add(stringOf(id));
+			}
+		}
+		return strings;
+	}
+
+	@Override
+	public Map<String, Inflected> getInflectionTable() {
+		Map<String, Inflected> table = new LinkedHashMap<>();
+		for (int id = 0; id < count; id++) {
+			if (intAt(basesPos, id) != NONE) {
+				String word = stringOf(id);
+				table.put(word, inflectedOf(id, word));
+			}
+		}
+		return table;
+	}
+
+	@Override
+	public DerivativeGraph getDerivativeGraph() {
+
+		// the graph ids are the ranks of the pool ids of the graph words
+		int[] graphIds = filled(count);
+		int n = 0;
+		for (int id = 0; id < count; id++) {
+			if ((image.get(flagsPos + id) & IN_GRAPH) != 0) {
+				graphIds[id] = n++;
+			}
+		}
+
+		String[] words = new String[n];
+		int[] stems = new int[n];
+		int[] roots = new int[n];
+		int[] offsets = new int[n + 1];
+		int[] derivatives = new int[intAt(derivativeOffsetsPos, count)];
+		for (int id = 0; id < count; id++) {
+			int graphId = graphIds[id];
+			if (graphId == NONE) {
+				continue;
+			}
+
+			words[graphId] = stringOf(id);
+			stems[graphId] = graphIdOf(graphIds, intAt(stemsPos, id));
+			roots[graphId] = graphIdOf(graphIds, intAt(rootsPos, id));
+
+			int at = offsets[graphId];
+			for (int i = intAt(derivativeOffsetsPos, id); i < intAt(derivativeOffsetsPos, id + 1); i++) {
+				derivatives[at++] = graphIds[intAt(derivativesPos, i)];
+			}
+			offsets[graphId + 1] = at;
+		}
+		return new DerivativeGraph(words, stems, roots, offsets, derivatives);
+	}
+
+	private static int graphIdOf(int[] graphIds, int id) {
+		return id == NONE ? DerivativeGraph.NONE : graphIds[id];
+	}
+
+	@Override
+	public Map<String, MorphNode> getMorphNodeMap() {
+		Map<String, MorphNode> map = new LinkedHashMap<>();
+		for (int id = 0; id < count; id++) {
+			int offset = intAt(splitsPos, id);
+			if (offset != NONE) {
+				map.put(stringOf(id), readNode(new int[] { nodesPos + offset }));
+			}
+		}
+		return map;
+	}
+}
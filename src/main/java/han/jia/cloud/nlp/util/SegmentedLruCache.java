@@ -0,0 +1,287 @@
+package han.jia.cloud.nlp.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded {@code LookupCache} using the segmented LRU eviction policy, with
+ * an optional expiry after write.
+ *
+ * <p>
+ * A new entry first goes into a small probationary segment and is only
+ * promoted to the protected segment when it is hit again. Words seen just once,
+ * such as typos or URLs, are therefore evicted before the frequent ones, no
+ * matter how many of them pass through.
+ *
+ * <p>
+ * To keep lock contention low, the keys are spread over a number of
+ * independently locked partitions by their hash codes, each of which holds an
+ * equal share of the maximum size.
+ *
+ * @author Jiayun Han
+ *
+ * @param <K>
+ *            The type of the keys
+ * @param <V>
+ *            The type of the values
+ */
+public class SegmentedLruCache<K, V> implements LookupCache<K, V> {
+
+	// the share of each partition given to the protected segment
+	private static final double PROTECTED_RATIO = 0.8;
+
+	private final Partition<K, V>[] partitions;
+	private final long expireAfterWriteNanos;
+
+	/**
+	 * Creates a cache whose entries never expire
+	 *
+	 * @param maximumSize
+	 *            The maximum number of entries to hold
+	 */
+	public SegmentedLruCache(int maximumSize) {
+		this(maximumSize, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Creates a cache whose entries expire a fixed duration after being written
+	 *
+	 * @param maximumSize
+	 *            The maximum number of entries to hold
+	 * @param expireAfterWrite
+	 *            The lifetime of an entry, or 0 for no expiry
+	 * @param unit
+	 *            The unit of the lifetime
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SegmentedLruCache(int maximumSize, long expireAfterWrite, TimeUnit unit) {
+
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+		}
+
+		int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2));
+		while (count > 1 && maximumSize / count < 16) {
+			count >>= 1;
+		}
+
+		partitions = new Partition[count];
+		for (int i = 0; i < count; i++) {
+			int share = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+			partitions[i] = new Partition<K, V>(share);
+		}
+
+		expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+	}
+
+	/**
+	 * Returns a factory creating caches of the same size and expiry
+	 *
+	 * @param maximumSize
+	 *            The maximum number of entries of each cache
+	 * @param expireAfterWrite
+	 *            The lifetime of an entry, or 0 for no expiry
+	 * @param unit
+	 *            The unit of the lifetime
+	 * @return The factory
+	 */
+	public static LookupCache.Factory factory(int maximumSize, long expireAfterWrite, TimeUnit unit) {
+		return new LookupCache.Factory() {
+			@Override
+			public <K, V> LookupCache<K, V> newCache(String name) {
+				return new SegmentedLruCache<K, V>(maximumSize, expireAfterWrite, unit);
+			}
+		};
+	}
+
+	private Partition<K, V> partitionOf(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return partitions[h & (partitions.length - 1)];
+	}
+
+	private long now() {
+		return expireAfterWriteNanos > 0 ? System.nanoTime() : 0L;
+	}
+
+	@Override
+	public V get(K key) {
+		return partitionOf(key).get(key, now(), expireAfterWriteNanos);
+	}
+
+	@Override
+	public void put(K key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value cannot be null");
+		}
+		partitionOf(key).put(key, value, now());
+	}
+
+	@Override
+	public void clear() {
+		for (Partition<K, V> partition : partitions) {
+			partition.clear();
+		}
+	}
+
+	@Override
+	public long size() {
+		long size = 0;
+		for (Partition<K, V> partition : partitions) {
+			size += partition.size();
+		}
+		return size;
+	}
+
+	@Override
+	public CacheStats stats() {
+		long hits = 0, misses = 0, evictions = 0, size = 0;
+		for (Partition<K, V> partition : partitions) {
+			synchronized (partition) {
+				hits += partition.hits;
+				misses += partition.misses;
+				evictions += partition.evictions;
+				size += partition.probation.size() + partition.protect.size();
+			}
+		}
+		return new CacheStats(hits, misses, evictions, size);
+	}
+
+	/**
+	 * Returns the keys of the protected segments, then of the probationary
+	 * ones. The keys of a segment are taken from the partitions in turn, each
+	 * from its most recently used, so that the limit does not leave out the
+	 * partitions coming last.
+	 */
+	@Override
+	public List<K> hotKeys(int limit) {
+		List<K> keys = new ArrayList<>();
+		for (int segment = 0; segment < 2 && keys.size() < limit; segment++) {
+
+			List<List<K>> segments = new ArrayList<>(partitions.length);
+			int longest = 0;
+			for (Partition<K, V> partition : partitions) {
+				synchronized (partition) {
+					List<K> recent = new ArrayList<>(
+							segment == 0 ? partition.protect.keySet() : partition.probation.keySet());
+					segments.add(recent);
+					longest = Math.max(longest, recent.size());
+				}
+			}
+
+			for (int rank = 1; rank <= longest && keys.size() < limit; rank++) {
+				for (int i = 0; i < segments.size() && keys.size() < limit; i++) {
+					List<K> recent = segments.get(i);
+					if (rank <= recent.size()) {
+						keys.add(recent.get(recent.size() - rank));
+					}
+				}
+			}
+		}
+		return keys;
+	}
+
+	private static final class Entry<V> {
+
+		private final V value;
+		private final long writeTime;
+
+		private Entry(V value, long writeTime) {
+			this.value = value;
+			this.writeTime = writeTime;
+		}
+	}
+
+	/**
+	 * One independently locked part of the cache, made of the probationary and
+	 * the protected segment, both kept in access order.
+	 */
+	private static final class Partition<K, V> {
+
+		private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+		private final LinkedHashMap<K, Entry<V>> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+		private final int maxProtected;
+		private final int maxSize;
+
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		private Partition(int maxSize) {
+			this.maxSize = Math.max(1, maxSize);
+			this.maxProtected = (int) (this.maxSize * PROTECTED_RATIO);
+		}
+
+		private synchronized V get(Object key, long now, long expireAfterWriteNanos) {
+
+			Entry<V> entry = protect.get(key);
+			boolean isProtected = entry != null;
+			if (entry == null) {
+				entry = probation.get(key);
+			}
+
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+
+			if (expireAfterWriteNanos > 0 && now - entry.writeTime > expireAfterWriteNanos) {
+				(isProtected ? protect : probation).remove(key);
+				evictions++;
+				misses++;
+				return null;
+			}
+
+			hits++;
+			if (!isProtected) {
+				promote(key);
+			}
+			return entry.value;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void promote(Object key) {
+			protect.put((K) key, probation.remove(key));
+
+			// demote the least recently used protected entries
+			while (protect.size() > maxProtected) {
+				Iterator<Map.Entry<K, Entry<V>>> it = protect.entrySet().iterator();
+				Map.Entry<K, Entry<V>> eldest = it.next();
+				it.remove();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+
+		private synchronized void put(K key, V value, long now) {
+
+			Entry<V> entry = new Entry<V>(value, now);
+			if (protect.containsKey(key)) {
+				protect.put(key, entry);
+				return;
+			}
+
+			probation.put(key, entry);
+
+			while (probation.size() + protect.size() > maxSize && !probation.isEmpty()) {
+				Iterator<K> it = probation.keySet().iterator();
+				it.next();
+				it.remove();
+				evictions++;
+			}
+		}
+
+		private synchronized void clear() {
+			probation.clear();
+			protect.clear();
+		}
+
+		private synchronized int size() {
+			return probation.size() + protect.size();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package han.jia.cloud.nlp.util;
+
+/**
+ * A split of a word into its stem and inflection kept as offsets into the
+ * word, so that a candidate split can be checked without creating any string.
+ *
+ * <p>
+ * The stem is the chars of the word before {@code stemEnd} followed by an
+ * extra string, e.g. 'hop' + 'e' for 'hoping'; the inflection is the chars of
+ * the word from {@code inflectionStart} on, e.g. 'ing'. The strings are only
+ * created by {@link #stem()} and {@link #inflection()}, once a split is
+ * accepted.
+ *
+ * <p>
+ * An instance is meant to be reused, so it is not thread-safe.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class StemSplit {
+
+	private String word;
+	private int stemEnd;
+	private String stemExtra;
+	private int inflectionStart;
+
+	void set(String word, int stemEnd, String stemExtra, int inflectionStart) {
+		this.word = word;
+		this.stemEnd = stemEnd;
+		this.stemExtra = stemExtra;
+		this.inflectionStart = inflectionStart;
+	}
+
+	/**
+	 * Returns the word being split
+	 *
+	 * @return The word
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Returns the end of the part of the word starting the stem
+	 *
+	 * @return The end of the stem in the word, exclusive
+	 */
+	public int getStemEnd() {
+		return stemEnd;
+	}
+
+	/**
+	 * Returns the string following the part of the word in the stem
+	 *
+	 * @return The extra string, possibly empty
+	 */
+	public String getStemExtra() {
+		return stemExtra;
+	}
+
+	/**
+	 * Returns the start of the inflection in the word
+	 *
+	 * @return The start of the inflection, inclusive
+	 */
+	public int getInflectionStart() {
+		return inflectionStart;
+	}
+
+	/**
+	 * Creates the stem
+	 *
+	 * @return The stem as a string
+	 */
+	public String stem() {
+		String head = word.substring(0, stemEnd);
+		return stemExtra.isEmpty() ? head : head.concat(stemExtra);
+	}
+
+	/**
+	 * Creates the inflection
+	 *
+	 * @return The inflection as a string
+	 */
+	public String inflection() {
+		return word.substring(inflectionStart);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + stem() + ", " + inflection() + "]";
+	}
+}
@@ -1,6 +1,8 @@
 package han.jia.cloud.nlp.util;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
 import han.jia.cloud.nlp.util.Constants;
 
@@ -12,6 +14,16 @@ import han.jia.cloud.nlp.util.Constants;
  */
 public final class StringUtil {
 
+	/**
+	 * Tells whether the string made of a span of chars followed by an extra
+	 * string passes a test, e.g. {@code Dictionary::isWord}
+	 */
+	@FunctionalInterface
+	public interface SpanPredicate {
+
+		boolean test(CharSequence s, int start, int end, String extra);
+	}
+
 	/**
 	 * Tries to cut the word into two parts with the cutting position at the
 	 * word.length() - ending.length() where ending is the first of the endings
@@ -49,11 +61,28 @@ public final class StringUtil {
 	 *            The word to be split
 	 * 
 	 * @param words
-	 *            The word list used to validate the resulted root
+	 *            The words used to validate the resulted root. A hash-based
+	 *            set is expected, as it is checked once or twice per call.
+	 * @return The root and the suffix of the word
+	 */
+	public static String[] cutWhenEndsWithErEdEstIng(String word,
+			Collection<String> words) {
+		return cutWhenEndsWithErEdEstIng(word, words::contains);
+	}
+
+	/**
+	 * Tries to cut the word into its root and suffix when the word ends with
+	 * er, ed, est, or ing
+	 * 
+	 * @param word
+	 *            The word to be split
+	 * 
+	 * @param isWord
+	 *            The predicate telling whether the resulted root is a word
 	 * @return The root and the suffix of the word
 	 */
 	public static String[] cutWhenEndsWithErEdEstIng(String word,
-			List<String> words) {
+			Predicate<String> isWord) {
 
 		String[] rs = new String[2];
 		String tryWord;
@@ -68,7 +97,7 @@ public final class StringUtil {
 			tryWord = word.substring(0, word.length() - 3) + Constants.e;
 
 			// if tryWord is a real word
-			if (words.contains(tryWord)) // hoping
+			if (isWord.test(tryWord)) // hoping
 			{
 				rs[0] = tryWord;
 				rs[1] = word.substring(tryWord.length() - 1); // offset the
@@ -90,7 +119,7 @@ public final class StringUtil {
 			tryWord = word.substring(0, word.length() - 1); // lover
 
 			// lover -> [love,er]
-			if (words.contains(tryWord)) {
+			if (isWord.test(tryWord)) {
 				rs[0] = tryWord; // love
 				rs[1] = word.substring(tryWord.length() - 1); // er or ed
 			} else {
@@ -210,4 +239,105 @@ public final class StringUtil {
 
 		return ss;
 	}
+
+	/**
+	 * Returns the cutting position of the word at the first of the endings
+	 * that the word ends with, the span counterpart of
+	 * {@link #crudeRootSuffix(String, List)}
+	 * 
+	 * @param word
+	 *            The word to be cut, e.g. cities
+	 * @param endings
+	 *            The endings for which the word tries to match its ending
+	 * @return The length of the word without the ending, e.g. 3 for {cit,
+	 *         ies}, or -1 if no ending matches
+	 */
+	public static int crudeCut(String word, List<String> endings) {
+		int index = endWithListElement(word, endings);
+		return index == -1 ? -1 : word.length() - endings.get(index).length();
+	}
+
+	/**
+	 * Splits the word whose rough tail starts at the passed position, the span
+	 * counterpart of {@link #splitEnding(String)} applied to the tail found by
+	 * {@link #crudeCut(String, List)}
+	 * 
+	 * @param word
+	 *            The word to be split, e.g. cities
+	 * @param cut
+	 *            The start of the rough tail, e.g. 3 for 'ies'
+	 * @param split
+	 *            Receives the stem and inflection, e.g. {cit + y, es}
+	 */
+	public static void splitEnding(String word, int cut, StemSplit split) {
+		int length = word.length();
+
+		// [bu]shes, [bo]xes, [kni]ves, but not [cit]ies
+		if (length - cut >= 2 && word.endsWith(Constants.es)
+				&& !(length - cut >= 3 && word.endsWith(Constants.ies))) {
+			if (word.charAt(cut) == 'v') {
+				split.set(word, cut, Constants.f, length - 2);
+			} else {
+				split.set(word, length - 2, Constants.EMPTY_STR, length - 2);
+			}
+		} else if (word.charAt(cut + 1) == word.charAt(cut + 2)) {
+			// [h]otter, [beg]inner, [b]egged
+			split.set(word, cut + 2, Constants.EMPTY_STR, cut + 3);
+		} else {
+			// [ci]ties, [hur]ried
+			split.set(word, cut + 1, Constants.y, cut + 2);
+		}
+	}
+
+	/**
+	 * Cuts the word into its root and suffix when the word ends with er, ed,
+	 * est, or ing, the span counterpart of
+	 * {@link #cutWhenEndsWithErEdEstIng(String, Predicate)}
+	 * 
+	 * @param word
+	 *            The word to be split
+	 * @param isWord
+	 *            The predicate telling whether the resulted root is a word
+	 * @param split
+	 *            Receives the root and the suffix of the word
+	 */
+	public static void cutWhenEndsWithErEdEstIng(String word, SpanPredicate isWord, StemSplit split) {
+		int length = word.length();
+
+		if (word.endsWith(Constants.est) || word.endsWith(Constants.ing)) {
+			// hoping -> [hope, ing]; working -> [work, ing]
+			String extra = isWord.test(word, 0, length - 3, Constants.e) ? Constants.e : Constants.EMPTY_STR;
+			split.set(word, length - 3, extra, length - 3);
+		} else if (isWord.test(word, 0, length - 1, Constants.EMPTY_STR)) {
+			// lover -> [love, er]
+			split.set(word, length - 1, Constants.EMPTY_STR, length - 2);
+		} else {
+			// worker -> [work, er]
+			split.set(word, length - 2, Constants.EMPTY_STR, length - 2);
+		}
+	}
+
+	/**
+	 * Cuts the word at the desired position, the span counterpart of
+	 * {@link #splitFromRight(String, int, String...)}
+	 * 
+	 * @param word
+	 *            The word to be cut
+	 * @param offset
+	 *            Used to adjust the cutting position
+	 * @param extra
+	 *            The extra string to be added back to the resulted head
+	 * @param split
+	 *            Receives the head and tail of the word
+	 * @return true if cutting is possible; false otherwise
+	 */
+	public static boolean splitFromRight(String word, int offset, String extra, StemSplit split) {
+		int cut = word.length() - offset;
+		if (cut <= 0) {
+			return false;
+		}
+
+		split.set(word, cut, extra.equals(Constants.MARKER_1) ? Constants.EMPTY_STR : extra, cut);
+		return true;
+	}
 }
@@ -0,0 +1,247 @@
+package han.jia.cloud.nlp.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits the text read from a {@code Reader} into words, keeping the character
+ * offset of each word.
+ *
+ * <p>
+ * A word is a run of letters, in which a hyphen is kept when it is followed by
+ * another letter, as in "well-known". Anything else, including apostrophes and
+ * digits, separates words. The letters are taken by code point, so a letter
+ * outside the Basic Multilingual Plane, written as a surrogate pair, is part
+ * of a word like any other.
+ *
+ * <p>
+ * The text goes through a fixed-size buffer, which is all the memory the
+ * tokenizer holds no matter how long the text is. A word longer than the
+ * buffer size, which is never a real word, is skipped. No regular
+ * expressions are involved.
+ *
+ * <p>
+ * An instance is not thread-safe.
+ *
+ * @author Jiayun Han
+ *
+ */
+public final class WordTokenizer {
+
+	/**
+	 * The default size of the buffer, in chars
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final char HYPHEN = '-';
+
+	private final Reader reader;
+	private final int maxLength;
+
+	// room for the longest word plus a hyphen and a surrogate pair of
+	// look-ahead
+	private final char[] buffer;
+
+	// the chars of the buffer from pos up to limit are yet to be tokenized
+	private int pos;
+	private int limit;
+
+	// the start of the word being scanned in the buffer, or -1
+	private int mark = -1;
+
+	// the offset in the text of the first char of the buffer
+	private long base;
+
+	private boolean eof;
+
+	private String word;
+	private long start;
+
+	/**
+	 * Creates a tokenizer with a buffer of the default size
+	 *
+	 * @param reader
+	 *            The reader of the text
+	 */
+	public WordTokenizer(Reader reader) {
+		this(reader, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a tokenizer
+	 *
+	 * @param reader
+	 *            The reader of the text
+	 * @param bufferSize
+	 *            The size of the buffer, in chars, which is also the maximum
+	 *            length of a word
+	 */
+	public WordTokenizer(Reader reader, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+		}
+		this.reader = reader;
+		this.maxLength = bufferSize;
+		this.buffer = new char[bufferSize + 3];
+	}
+
+	/**
+	 * Moves to the next word of the text
+	 *
+	 * @return true if there is one; false at the end of the text
+	 * @throws IOException
+	 *             If the text cannot be read
+	 */
+	public boolean next() throws IOException {
+
+		for (;;) {
+			// skip to the first letter of a word
+			int letter;
+			for (;;) {
+				if (!ensure(1)) {
+					word = null;
+					return false;
+				}
+				letter = letterAt(0);
+				if (letter > 0) {
+					break;
+				}
+				pos++;
+			}
+
+			mark = pos;
+			pos += letter;
+			boolean tooLong = false;
+
+			for (;;) {
+				if (!ensure(1)) {
+					if (eof) {
+						break;
+					}
+					// the word fills the whole buffer, so it is too long
+					tooLong = true;
+					mark = -1;
+					continue;
+				}
+
+				int hyphen = 0;
+				if (buffer[pos] == HYPHEN) {
+					if (!ensure(2)) {
+						if (eof) {
+							break;
+						}
+						tooLong = true;
+						mark = -1;
+						continue;
+					}
+					hyphen = 1;
+				}
+
+				letter = letterAt(hyphen);
+				if (letter < 0) {
+					tooLong = true;
+					mark = -1;
+					continue;
+				}
+				if (letter == 0) {
+					break;
+				}
+				pos += hyphen + letter;
+			}
+
+			if (!tooLong && pos - mark <= maxLength) {
+				word = new String(buffer, mark, pos - mark);
+				start = base + mark;
+				mark = -1;
+				return true;
+			}
+			mark = -1;
+		}
+	}
+
+	/**
+	 * Returns the number of chars of the letter at the passed distance from
+	 * {@code pos}, which must be available: 1, or 2 for a surrogate pair. It
+	 * is 0 if there is no letter there, and -1 if the buffer is too full to
+	 * tell.
+	 */
+	private int letterAt(int offset) throws IOException {
+
+		char c = buffer[pos + offset];
+		if (!Character.isHighSurrogate(c)) {
+			return Character.isLetter(c) ? 1 : 0;
+		}
+
+		if (!ensure(offset + 2)) {
+			return eof ? 0 : -1;
+		}
+		char low = buffer[pos + offset + 1];
+		return Character.isLowSurrogate(low) && Character.isLetter(Character.toCodePoint(c, low)) ? 2 : 0;
+	}
+
+	/**
+	 * Makes at least the passed number of chars available from {@code pos},
+	 * moving the word being scanned to the front of the buffer to make room.
+	 *
+	 * @return false at the end of the text, or if the word being scanned
+	 *         already fills the buffer
+	 */
+	private boolean ensure(int count) throws IOException {
+
+		while (limit - pos < count) {
+			if (eof) {
+				return false;
+			}
+
+			int keep = mark >= 0 ? mark : pos;
+			if (keep > 0) {
+				System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+				base += keep;
+				limit -= keep;
+				pos -= keep;
+				if (mark >= 0) {
+					mark -= keep;
+				}
+			}
+
+			if (limit == buffer.length) {
+				return false;
+			}
+
+			int read = reader.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current word
+	 *
+	 * @return The word found by the last call of {@link #next()}
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Returns the offset of the first char of the current word in the text
+	 *
+	 * @return The start offset, inclusive
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the offset following the last char of the current word
+	 *
+	 * @return The end offset, exclusive
+	 */
+	public long getEnd() {
+		return start + word.length();
+	}
+}
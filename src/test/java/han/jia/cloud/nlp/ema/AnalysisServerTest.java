@@ -0,0 +1,225 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class AnalysisServerTest {
+
+	private static final List<String> WORDS = Arrays.asList("cities", "unhappiness", "cities", "British", "the");
+
+	private static Dictionary dictionary;
+
+	private AnalysisServer server;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	@After
+	public void stopServer() {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	private AnalysisServer start(MorphParser parser, int queueCapacity) throws IOException {
+		server = new AnalysisServer(parser, new InetSocketAddress("127.0.0.1", 0), queueCapacity,
+				AnalysisServer.DEFAULT_MAX_BATCH_WORDS, 0);
+		server.start();
+		return server;
+	}
+
+	private static final class Response {
+
+		private final int status;
+		private final String contentType;
+		private final String body;
+
+		private Response(HttpURLConnection connection) throws IOException {
+			status = connection.getResponseCode();
+			contentType = connection.getContentType();
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while (in != null && (read = in.read(buffer)) > 0) {
+					bytes.write(buffer, 0, read);
+				}
+			}
+			body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private HttpURLConnection connect(String path) throws IOException {
+		InetSocketAddress address = server.getAddress();
+		URL url = new URL("http", address.getHostString(), address.getPort(), path);
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	private Response post(String path, String body) throws IOException {
+		HttpURLConnection connection = connect(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return new Response(connection);
+	}
+
+	private Response get(String path) throws IOException {
+		return new Response(connect(path));
+	}
+
+	private static String expected(MorphParser parser, AnalysisFormat format, List<String> words) {
+		StringBuilder sb = new StringBuilder();
+		for (String word : words) {
+			format.append(sb, word, parser.parse(word));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void linesInTheOrderOfTheWordsInEachFormat() throws IOException {
+		MorphParser parser = new MorphParser(dictionary);
+		start(parser, AnalysisServer.DEFAULT_QUEUE_CAPACITY);
+		String body = String.join(" ", WORDS.subList(0, 3)) + "\n\t" + String.join("  ", WORDS.subList(3, 5));
+
+		Response tsv = post("/analyze", body);
+		assertEquals(200, tsv.status);
+		assertEquals(AnalysisFormat.TSV.getContentType(), tsv.contentType);
+		assertEquals(expected(parser, AnalysisFormat.TSV, WORDS), tsv.body);
+		assertTrue(tsv.body.startsWith("cities\t"));
+
+		for (AnalysisFormat format : AnalysisFormat.values()) {
+			Response response = post("/analyze?format=" + format.name().toLowerCase(Locale.ROOT), body);
+			assertEquals(200, response.status);
+			assertEquals(format.getContentType(), response.contentType);
+			assertEquals(expected(parser, format, WORDS), response.body);
+		}
+	}
+
+	@Test
+	public void emptyBodyGetsAnEmptyResponse() throws IOException {
+		start(new MorphParser(dictionary), AnalysisServer.DEFAULT_QUEUE_CAPACITY);
+		Response response = post("/analyze", " \n");
+		assertEquals(200, response.status);
+		assertEquals("", response.body);
+	}
+
+	@Test
+	public void turnsDownOtherMethodsUnknownFormatsAndTooManyWords() throws IOException {
+		start(new MorphParser(dictionary), AnalysisServer.DEFAULT_QUEUE_CAPACITY);
+
+		HttpURLConnection connection = connect("/analyze");
+		assertEquals(405, new Response(connection).status);
+		assertEquals("POST", connection.getHeaderField("Allow"));
+
+		assertEquals(400, post("/analyze?format=xml", "cities").status);
+
+		StringBuilder words = new StringBuilder();
+		for (int i = 0; i <= AnalysisServer.MAX_REQUEST_WORDS; i++) {
+			words.append("a ");
+		}
+		assertEquals(413, post("/analyze", words.toString()).status);
+	}
+
+	@Test
+	public void failedWordComesBackAloneAndTheRestOfTheBatchIsParsed() throws IOException {
+		MorphParser parser = new MorphParser(dictionary) {
+			@Override
+			public MorphNode parse(String text) {
+				if (text.equals("bad")) {
+					throw new StackOverflowError();
+				}
+				return super.parse(text);
+			}
+		};
+		start(parser, AnalysisServer.DEFAULT_QUEUE_CAPACITY);
+
+		Response response = post("/analyze?format=bracketed", "happy bad cities");
+		assertEquals(200, response.status);
+
+		StringBuilder expected = new StringBuilder();
+		AnalysisFormat.BRACKETED.append(expected, "happy", parser.parse("happy"));
+		AnalysisFormat.BRACKETED.append(expected, "bad", new MorphNode("bad", MorphType.Word));
+		AnalysisFormat.BRACKETED.append(expected, "cities", parser.parse("cities"));
+		assertEquals(expected.toString(), response.body);
+		assertTrue(get("/stats").body.contains("failures=1\n"));
+	}
+
+	private CompletableFuture<Response> postAsync(String body) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return post("/analyze", body);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	@Test
+	public void turnsDownARequestWhenTheQueueIsFull() throws Exception {
+		CountDownLatch parsing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		MorphParser parser = new MorphParser(dictionary) {
+			@Override
+			public MorphNode parse(String text) {
+				if (text.equals("cities")) {
+					parsing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.parse(text);
+			}
+		};
+		start(parser, 1);
+
+		// the batcher holds the first request, the queue the second
+		CompletableFuture<Response> first = postAsync("cities");
+		assertTrue(parsing.await(10, TimeUnit.SECONDS));
+		CompletableFuture<Response> second = postAsync("happy");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!get("/stats").body.contains("queued=1\n")) {
+			assertTrue(System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+
+		Response busy = post("/analyze", "British");
+		assertEquals(503, busy.status);
+		assertEquals("Too busy\n", busy.body);
+
+		release.countDown();
+		assertEquals(expected(parser, AnalysisFormat.TSV, Arrays.asList("cities")),
+				first.get(10, TimeUnit.SECONDS).body);
+		assertEquals(expected(parser, AnalysisFormat.TSV, Arrays.asList("happy")),
+				second.get(10, TimeUnit.SECONDS).body);
+	}
+}
@@ -0,0 +1,112 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class BatchAnalyzerTest {
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	private static String analyze(MorphParser parser, boolean text, String input) throws IOException {
+		Path file = Files.createTempFile("batch", ".txt");
+		try {
+			Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new BatchAnalyzer(parser, AnalysisFormat.BRACKETED, text, 2, 8).analyze(file, out);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void runningTextParsedAsWritten() throws IOException {
+		MorphParser parser = new MorphParser(dictionary);
+		String expected = "";
+		for (String word : new String[] { "The", "British", "cities" }) {
+			expected += word + "\t" + MorphNodeFormat.BRACKETED.format(parser.parseAsWritten(word)) + "\n";
+		}
+		assertEquals(expected, analyze(parser, true, "The British cities.\n"));
+	}
+
+	@Test
+	public void failedWordWrittenBareAndTheRestGoesOn() throws IOException {
+		MorphParser parser = new MorphParser(dictionary) {
+			@Override
+			public MorphNode parse(String text) {
+				if (text.equals("bad")) {
+					throw new StackOverflowError();
+				}
+				return super.parse(text);
+			}
+		};
+
+		String expected = "happy\t" + MorphNodeFormat.BRACKETED.format(parser.parse("happy")) + "\nbad\tbad\n"
+				+ "cities\t" + MorphNodeFormat.BRACKETED.format(parser.parse("cities")) + "\n";
+		assertEquals(expected, analyze(parser, false, "happy\nbad\ncities\n"));
+	}
+
+	@Test
+	public void textWithoutLineFeedsCutAtWhiteSpace() throws IOException {
+		MorphParser parser = new MorphParser(dictionary);
+
+		StringBuilder input = new StringBuilder();
+		StringBuilder tokens = new StringBuilder();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			for (String word : new String[] { "The", "unhappiness", "cities" }) {
+				input.append(word).append(i % 7 == 0 ? '\t' : ' ');
+				tokens.append(word).append('\t').append(MorphNodeFormat.BRACKETED.format(parser.parse(word)))
+						.append('\n');
+				text.append(word).append('\t').append(MorphNodeFormat.BRACKETED.format(parser.parseAsWritten(word)))
+						.append('\n');
+			}
+		}
+
+		assertEquals(tokens.toString(), analyze(parser, false, input.toString()));
+		assertEquals(text.toString(), analyze(parser, true, input.toString()));
+	}
+
+	@Test
+	public void tokenLongerThanTwoChunksCutBetweenItsCharacters() throws IOException {
+		String input = "";
+		for (int i = 0; i < 10; i++) {
+			input += "ééé中𝒜";
+		}
+
+		Path file = Files.createTempFile("batch", ".txt");
+		try {
+			Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			BatchAnalyzer.Stats stats = new BatchAnalyzer(new MorphParser(dictionary), AnalysisFormat.BRACKETED,
+					false, 2, 8).analyze(file, out);
+
+			// no chunk is more than 16 bytes, and each is whole characters
+			assertTrue(stats.getChunks() >= input.getBytes(StandardCharsets.UTF_8).length / 16);
+			String pieces = "";
+			for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+				pieces += line.substring(0, line.indexOf('\t'));
+			}
+			assertEquals(input, pieces);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.StringUtil;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class InflectionEndingTrieTest {
+
+	// the cut of each category as a linear scan of its list finds it
+	private static void assertCutsLikeTheLists(InflectionEndingTrie trie, List<List<String>> lists, String word) {
+
+		int[] cuts = new int[InflectionEndingTrie.CATEGORIES];
+		int categories = trie.classify(word, cuts);
+
+		for (int category = 0; category < InflectionEndingTrie.CATEGORIES; category++) {
+			List<String> endings = lists.get(category);
+			int expected = endings == null ? -1 : StringUtil.crudeCut(word, endings);
+
+			assertEquals("cut of category " + category + " of '" + word + "'", expected, cuts[category]);
+			assertEquals("category " + category + " of '" + word + "'", expected != -1,
+					InflectionEndingTrie.has(categories, category));
+		}
+	}
+
+	private static List<List<String>> lists(List<String> cYs, List<String> vCCs, List<String> edErEstIng,
+			List<String> esEnding) {
+		return Arrays.asList(cYs, vCCs, edErEstIng, Collections.singletonList("s"), esEnding);
+	}
+
+	@Test
+	public void overlappingEndingsInListOrder() {
+
+		// a longer ending listed after a shorter one it ends with is never
+		// found, and one listed before it is found first
+		List<String> cYs = Arrays.asList("ties", "ies", "ried");
+		List<String> vCCs = Arrays.asList("er", "otter", "tter");
+		List<String> edErEstIng = Arrays.asList("ed", "er", "est", "ing");
+		List<String> esEnding = Arrays.asList("shes", "es", "ches", "xes");
+		InflectionEndingTrie trie = new InflectionEndingTrie(cYs, vCCs, edErEstIng, esEnding);
+		List<List<String>> lists = lists(cYs, vCCs, edErEstIng, esEnding);
+
+		List<String> words = new ArrayList<>();
+		words.add("");
+		for (int from = 0; from < words.size(); from++) {
+			String word = words.get(from);
+			if (word.length() < 5) {
+				for (char c : "cdegihnorstx".toCharArray()) {
+					words.add(c + word);
+				}
+			}
+		}
+
+		for (String word : words) {
+			assertCutsLikeTheLists(trie, lists, word);
+		}
+	}
+
+	@Test
+	public void missingListsFindNothing() {
+		InflectionEndingTrie trie = new InflectionEndingTrie(null, null, null, null);
+		for (String word : new String[] { "cities", "hotter", "boxes", "walked", "cats", "" }) {
+			assertCutsLikeTheLists(trie, lists(null, null, null, null), word);
+		}
+	}
+
+	@Test
+	public void dictionaryEndingsOnTheVocabulary() throws IOException {
+
+		Dictionary dictionary = TestDictionary.get();
+		InflectionEndingTrie trie = dictionary.getInflectionEndingTrie();
+		List<List<String>> lists = lists(dictionary.getcYs(), dictionary.getvCCs(), dictionary.getEdErEstIng(),
+				dictionary.getEsEnding());
+
+		for (String word : dictionary.getWords()) {
+			assertCutsLikeTheLists(trie, lists, word);
+		}
+		for (Inflected inflected : dictionary.getInflectionTable().values()) {
+			assertCutsLikeTheLists(trie, lists, inflected.getName());
+		}
+	}
+}
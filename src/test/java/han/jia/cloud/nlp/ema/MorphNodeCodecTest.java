@@ -0,0 +1,169 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.enums.MorphType;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.MappedDictionary;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class MorphNodeCodecTest {
+
+	private static final String[] WORDS = { "unhappiness", "cities", "British", "dispiriting", "newspaper",
+			"hotter", "fungi", "well-known" };
+
+	// the LITERAL flag of the header, with the type Word
+	private static final byte LITERAL_WORD = (byte) (0x20 | MorphType.Word.ordinal());
+
+	private static Dictionary dictionary;
+	private static MorphParser parser;
+	private static MorphNodeCodec codec;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+		parser = new MorphParser(dictionary);
+		codec = new MorphNodeCodec(dictionary);
+	}
+
+	@Test
+	public void roundTrip() {
+		for (String word : WORDS) {
+			MorphNode node = parser.parse(word);
+			byte[] bytes = codec.encode(node);
+
+			assertEquals(codec.encodedSize(node), bytes.length);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			assertEquals(node.toString(), codec.decode(buffer).toString());
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	@Test
+	public void treesDecodedInTheOrderEncoded() {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		for (String word : WORDS) {
+			codec.encode(parser.parse(word), buffer);
+		}
+
+		buffer.flip();
+		for (String word : WORDS) {
+			assertEquals(parser.parse(word).toString(), codec.decode(buffer).toString());
+		}
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void textsOutsideTheTableWrittenLiterally() {
+		String text = "qzxé中𝒜";
+		assertEquals(Dictionary.NO_SYMBOL, dictionary.getSymbolId(text));
+
+		MorphNode node = new MorphNode(text, MorphType.Word, new MorphNode("un", MorphType.Prefix),
+				new MorphNode(text, MorphType.Root));
+		assertEquals(node.toString(), codec.decode(ByteBuffer.wrap(codec.encode(node))).toString());
+	}
+
+	@Test
+	public void overflowLeavesThePositionUnchanged() {
+		MorphNode node = parser.parse("unhappiness");
+		ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(node) + 1);
+		buffer.put((byte) 7);
+		buffer.put((byte) 7);
+
+		try {
+			codec.encode(node, buffer);
+			fail("encoded past the limit");
+		} catch (BufferOverflowException e) {
+			assertEquals(2, buffer.position());
+		}
+	}
+
+	@Test
+	public void mappedDictionaryDecodesAlikeAndSharesItsTexts() throws IOException {
+		Path image = Files.createTempFile("ema", ".img");
+		try {
+			MappedDictionary.save(dictionary, image);
+			MorphNodeCodec mapped = new MorphNodeCodec(MappedDictionary.open(image));
+			assertEquals(codec.getFingerprint(), mapped.getFingerprint());
+
+			for (String word : WORDS) {
+				byte[] bytes = codec.encode(parser.parse(word));
+				MorphNode first = mapped.decode(ByteBuffer.wrap(bytes));
+				MorphNode second = mapped.decode(ByteBuffer.wrap(bytes));
+
+				assertEquals(parser.parse(word).toString(), first.toString());
+				assertSame(first.getText(), second.getText());
+			}
+		} finally {
+			Files.delete(image);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsABadHeader() {
+		codec.decode(ByteBuffer.wrap(new byte[] { (byte) 0xFF, 0 }));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsALiteralLongerThanTheBytesLeft() {
+		// a literal of 2^28 chars followed by two bytes
+		codec.decode(ByteBuffer.wrap(new byte[] { LITERAL_WORD, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 'a',
+				'b' }));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsANegativeLiteralLength() {
+		codec.decode(ByteBuffer.wrap(new byte[] { LITERAL_WORD, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x0F }));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsALiteralCharOutOfRange() {
+		codec.decode(ByteBuffer.wrap(new byte[] { LITERAL_WORD, 1, (byte) 0x80, (byte) 0x80, 0x04 }));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnUnknownSymbolId() {
+		codec.decode(ByteBuffer.wrap(new byte[] { (byte) MorphType.Word.ordinal(), (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x7F }));
+	}
+
+	@Test
+	public void treesUpToTheMaximumDepthDecoded() {
+		MorphNode node = new MorphNode("un", MorphType.Prefix);
+		for (int depth = 1; depth < MorphNodeCodec.MAX_DEPTH; depth++) {
+			node = new MorphNode("un", MorphType.Word, node, null);
+		}
+		assertEquals(node.toString(), codec.decode(ByteBuffer.wrap(codec.encode(node))).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsATreeTooDeep() {
+		// a megabyte of nodes each with a son, with id 0, which used to
+		// overflow the stack
+		byte[] bytes = new byte[1 << 20];
+		for (int i = 0; i < bytes.length; i += 2) {
+			bytes[i] = (byte) (0x08 | MorphType.Word.ordinal());
+		}
+		codec.decode(ByteBuffer.wrap(bytes));
+	}
+
+	@Test(expected = BufferUnderflowException.class)
+	public void rejectsATruncatedTree() {
+		byte[] bytes = codec.encode(parser.parse("unhappiness"));
+		codec.decode(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+	}
+}
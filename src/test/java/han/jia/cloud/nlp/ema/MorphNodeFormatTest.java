@@ -0,0 +1,73 @@
+package han.jia.cloud.nlp.ema;
+
+import static han.jia.cloud.nlp.util.Constants.NL;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import han.jia.cloud.nlp.enums.MorphType;
+
+public class MorphNodeFormatTest {
+
+	private static final MorphNode UNHAPPINESS = new MorphNode("unhappiness", MorphType.Word,
+			new MorphNode("unhappy", MorphType.Stem, new MorphNode("un", MorphType.Prefix),
+					new MorphNode("happy", MorphType.Root)),
+			new MorphNode("ness", MorphType.Suffix));
+
+	private static String lines(String... lines) {
+		return String.join(NL, lines);
+	}
+
+	/**
+	 * The texts the tree view had before it was written to an Appendable,
+	 * when MorphNode#toString() built it itself
+	 */
+	@Test
+	public void treeAsMorphNodeToStringWroteIt() throws IOException {
+		String unhappiness = lines("+-unhappiness(Word)",
+				"  | +-unhappy(Stem)",
+				"  | | +-un(Prefix)",
+				"  | | |",
+				"  | | +-happy(Root)",
+				"  | |",
+				"  | +-ness(Suffix)");
+		assertEquals(unhappiness, MorphNodeFormat.TREE.format(UNHAPPINESS));
+		assertEquals(unhappiness, UNHAPPINESS.toString());
+
+		StringWriter writer = new StringWriter();
+		MorphNodeFormat.TREE.write(UNHAPPINESS, writer);
+		assertEquals(unhappiness, writer.toString());
+
+		MorphNode fungi = new MorphNode("fungi", MorphType.Word, new MorphNode("fungus", MorphType.Root), null);
+		assertEquals(lines("+-fungi(Word)", "  | +-fungus(Root)", "  | |", "  "), MorphNodeFormat.TREE.format(fungi));
+
+		assertEquals("+-cat(Word)", MorphNodeFormat.TREE.format(new MorphNode("cat", MorphType.Word)));
+	}
+
+	@Test
+	public void bracketed() {
+		assertEquals("((un+happy)+ness)", MorphNodeFormat.BRACKETED.format(UNHAPPINESS));
+		assertEquals("cat", MorphNodeFormat.BRACKETED.format(new MorphNode("cat", MorphType.Word)));
+	}
+
+	@Test
+	public void json() {
+		assertEquals("{\"text\":\"unhappiness\",\"type\":\"Word\",\"children\":["
+				+ "{\"text\":\"unhappy\",\"type\":\"Stem\",\"children\":["
+				+ "{\"text\":\"un\",\"type\":\"Prefix\"},{\"text\":\"happy\",\"type\":\"Root\"}]},"
+				+ "{\"text\":\"ness\",\"type\":\"Suffix\"}]}", MorphNodeFormat.JSON.format(UNHAPPINESS));
+	}
+
+	@Test
+	public void jsonEscapesQuotesBackslashesAndControlCharacters() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		MorphNodeFormat.writeJsonString(sb, "a\"b\\c/d\te\nf\u0000g\u001f\u007fé中𝒜");
+		assertEquals("\"a\\\"b\\\\c/d\\u0009e\\u000af\\u0000g\\u001f\u007fé中𝒜\"", sb.toString());
+
+		assertEquals("{\"text\":\"\\\"\\\\\\u000d\",\"type\":\"Word\"}",
+				MorphNodeFormat.JSON.format(new MorphNode("\"\\\r", MorphType.Word)));
+	}
+}
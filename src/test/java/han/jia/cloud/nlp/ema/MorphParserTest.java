@@ -0,0 +1,170 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.LookupCache;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+/**
+ * Tests of {@code MorphParser} against the dictionary of the shipped dump
+ * file.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public class MorphParserTest {
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	/**
+	 * The inflected table maps 'news' to 'news' + irreg, which used to recurse
+	 * until the stack overflowed whenever 'news' was parsed below the word
+	 */
+	@Test
+	public void stopsAtLexiconAlreadyInProgress() {
+		for (String word : new String[] { "news", "newspaper", "newsletter", "newsroom", "newscaster" }) {
+			MorphNode node = new MorphParser(dictionary).parse(word);
+			assertEquals(word, node.getText());
+		}
+	}
+
+	/**
+	 * A cache hit takes the type asked for, so a word embedded in another
+	 * after being parsed on its own is a Stem, as in a fresh parser
+	 */
+	@Test
+	public void cacheHitsMatchTheUncachedParse() {
+		String[][] pairs = { { "dispirit", "dispiriting" }, { "fixate", "fixation" }, { "lady", "ladylike" } };
+		for (String[] pair : pairs) {
+			MorphParser warm = new MorphParser(dictionary);
+			warm.parse(pair[0]);
+
+			assertEquals(new MorphParser(dictionary).parse(pair[1]).toString(), warm.parse(pair[1]).toString());
+		}
+	}
+
+	/**
+	 * A word parsed as a part of another is a Word when it is parsed on its
+	 * own afterwards
+	 */
+	@Test
+	public void wordParsedAfterItsDerivativeIsAWord() {
+		for (String[] pair : new String[][] { { "dispiriting", "dispirit" }, { "Americanize", "American" } }) {
+			MorphParser warm = new MorphParser(dictionary);
+			warm.parse(pair[0]);
+
+			assertEquals(new MorphParser(dictionary).parse(pair[1]).toString(), warm.parse(pair[1]).toString());
+		}
+	}
+
+	@Test
+	public void parsingTwiceGivesTheSameTree() {
+		MorphParser parser = new MorphParser(dictionary);
+		for (String word : new String[] { "dispiriting", "unhappiness", "cities", "British" }) {
+			assertEquals(parser.parse(word).toString(), parser.parse(word).toString());
+		}
+	}
+
+	/**
+	 * The lexicon is case-sensitive: a word known as written keeps its case,
+	 * an unknown capitalized one is parsed in lower case
+	 */
+	@Test
+	public void wordsParsedAsWritten() {
+		MorphParser parser = new MorphParser(dictionary);
+		assertEquals(parser.parse("British").toString(), parser.parseAsWritten("British").toString());
+		assertEquals(parser.parse("Americanize").toString(), parser.parseAsWritten("Americanize").toString());
+		assertEquals(parser.parse("happiness").toString(), parser.parseAsWritten("Happiness").toString());
+		assertEquals(parser.parse("the").toString(), parser.parseAsWritten("The").toString());
+		assertEquals(parser.parse("cities").toString(), parser.parseAsWritten("cities").toString());
+	}
+
+	// caches that never hold anything, so that each word is parsed alone and
+	// the order the words are parsed in does not matter
+	private static final LookupCache.Factory NO_CACHE = new LookupCache.Factory() {
+		@Override
+		public <K, V> LookupCache<K, V> newCache(String name) {
+			return new LookupCache<K, V>() {
+				@Override
+				public V get(K key) {
+					return null;
+				}
+
+				@Override
+				public void put(K key, V value) {
+				}
+
+				@Override
+				public void clear() {
+				}
+
+				@Override
+				public long size() {
+					return 0;
+				}
+
+				@Override
+				public CacheStats stats() {
+					return new CacheStats(0, 0, 0, 0);
+				}
+			};
+		}
+	};
+
+	/**
+	 * A batch large enough to be split among threads, with each word many
+	 * times over, gives the parse of each word at its position
+	 */
+	@Test
+	public void parseAllGivesTheParsesInTheOrderOfTheTexts() {
+		MorphParser parser = new MorphParser(dictionary, NO_CACHE);
+
+		List<String> types = new ArrayList<>(Arrays.asList("dispiriting", "unhappiness", "cities", "British"));
+		types.addAll(dictionary.getWords().subList(0, 200));
+		List<String> texts = new ArrayList<>();
+		for (int i = 0; i < 3 * types.size(); i++) {
+			texts.add(types.get(i * 7 % types.size()));
+		}
+
+		List<MorphNode> nodes = parser.parseAll(texts);
+		assertEquals(texts.size(), nodes.size());
+		for (int i = 0; i < texts.size(); i++) {
+			assertEquals(texts.get(i), parser.parse(texts.get(i)).toString(), nodes.get(i).toString());
+		}
+	}
+
+	@Test
+	public void parseAllSharesTheTreeOfARepeatedText() {
+		List<MorphNode> nodes = new MorphParser(dictionary)
+				.parseAll(Arrays.asList("cities", "unhappiness", "cities", "cities", "unhappiness"));
+		assertSame(nodes.get(0), nodes.get(2));
+		assertSame(nodes.get(0), nodes.get(3));
+		assertSame(nodes.get(1), nodes.get(4));
+	}
+
+	@Test
+	public void parseAllOfNothing() {
+		MorphParser parser = new MorphParser(dictionary);
+		assertTrue(parser.parseAll(Collections.<String> emptyList()).isEmpty());
+		assertTrue(parser.parseAll(Stream.<String> empty()).isEmpty());
+	}
+}
@@ -0,0 +1,89 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.enums.ParseStage;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class ParserMetricsTest {
+
+	private static final String[] WORDS = { "unhappiness", "dispiriting", "cities", "British", "newspaper", "hotter",
+			"fungi", "well-known", "qzxv" };
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	@Test
+	public void slowestWordsKeptSlowestFirst() {
+		ParserMetrics metrics = new ParserMetrics(Collections::emptyMap);
+
+		List<Integer> micros = new ArrayList<>();
+		for (int i = 1; i <= 25; i++) {
+			micros.add(i);
+		}
+		Collections.shuffle(micros);
+		for (int i : micros) {
+			metrics.recordWord("w" + i, i * 1000L, 1, 1);
+		}
+
+		List<String> slowest = metrics.getSlowestWords();
+		assertEquals(10, slowest.size());
+		for (int i = 0; i < slowest.size(); i++) {
+			assertTrue(slowest.get(i), slowest.get(i).startsWith("w" + (25 - i) + "="));
+		}
+
+		metrics.reset();
+		assertTrue(metrics.getSlowestWords().isEmpty());
+		metrics.recordWord("fast", 1, 1, 1);
+		assertEquals(1, metrics.getSlowestWords().size());
+	}
+
+	@Test
+	public void nothingRecordedWhileDisabled() {
+		MorphParser parser = new MorphParser(dictionary);
+		ParserMetrics metrics = parser.enableMetrics();
+		parser.parse("unhappiness");
+		assertEquals(1, metrics.getLatencies(ParseStage.PARSE).getCount());
+
+		parser.disableMetrics();
+		assertNull(parser.getMetrics());
+		parser.parse("dispiriting");
+
+		assertEquals(1, metrics.getLatencies(ParseStage.PARSE).getCount());
+		assertEquals(1, metrics.getRecursionDepths().getCount());
+		assertEquals(1, metrics.getCandidates().getCount());
+	}
+
+	@Test
+	public void everyStageRecorded() {
+		MorphParser parser = new MorphParser(dictionary);
+		ParserMetrics metrics = parser.enableMetrics();
+		for (String word : WORDS) {
+			parser.parse(word);
+		}
+
+		for (ParseStage stage : ParseStage.values()) {
+			assertTrue(stage.getLabel(), metrics.getLatencies(stage).getCount() > 0);
+		}
+		assertEquals(WORDS.length, metrics.getLatencies(ParseStage.PARSE).getCount());
+		assertEquals(WORDS.length, metrics.getRecursionDepths().getCount());
+		assertEquals((long) WORDS.length, (long) metrics.getStageCounts().get(ParseStage.PARSE.getLabel()));
+		assertTrue(metrics.getMaxRecursionDepth() > 0);
+		assertTrue(metrics.getCacheHitRates().containsKey("word"));
+	}
+}
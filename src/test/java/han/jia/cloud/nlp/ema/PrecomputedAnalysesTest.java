@@ -0,0 +1,101 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.util.CacheStats;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.DictionarySnapshot;
+import han.jia.cloud.nlp.util.SegmentedLruCache;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class PrecomputedAnalysesTest {
+
+	private static final List<String> VOCABULARY = Arrays.asList("unhappiness", "cities", "British", "dispiriting");
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	private static byte[] bytesOf(PrecomputedAnalyses analyses) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		analyses.write(out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		PrecomputedAnalyses analyses = PrecomputedAnalyses.compute(new MorphParser(dictionary), VOCABULARY);
+		PrecomputedAnalyses read = PrecomputedAnalyses.read(new ByteArrayInputStream(bytesOf(analyses)), dictionary);
+
+		assertEquals(VOCABULARY.size(), read.size());
+		assertEquals(new MorphNodeCodec(dictionary).getFingerprint(), read.getFingerprint());
+		for (String word : VOCABULARY) {
+			assertEquals(analyses.get(word).toString(), read.get(word).toString());
+		}
+		assertNull(read.get("happiness"));
+	}
+
+	private static Dictionary copyOf(Dictionary dictionary) throws IOException {
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		DictionarySnapshot.write(dictionary, snapshot);
+		return DictionarySnapshot.read(new ByteArrayInputStream(snapshot.toByteArray()));
+	}
+
+	@Test
+	public void readWithACopyOfTheDictionary() throws IOException {
+		PrecomputedAnalyses analyses = PrecomputedAnalyses.compute(new MorphParser(dictionary), VOCABULARY);
+		PrecomputedAnalyses read = PrecomputedAnalyses.read(new ByteArrayInputStream(bytesOf(analyses)),
+				copyOf(dictionary));
+		assertEquals(VOCABULARY.size(), read.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAnotherDictionary() throws IOException {
+		PrecomputedAnalyses analyses = PrecomputedAnalyses.compute(new MorphParser(dictionary), VOCABULARY);
+
+		Dictionary other = copyOf(dictionary);
+		List<String> words = new ArrayList<>(other.getWords());
+		words.add("zyzzyvaz");
+		other.setWords(words);
+
+		PrecomputedAnalyses.read(new ByteArrayInputStream(bytesOf(analyses)), other);
+	}
+
+	@Test
+	public void precomputedHitsCountedApartFromTheWordCache() {
+		PrecomputedAnalyses analyses = PrecomputedAnalyses.compute(new MorphParser(dictionary), VOCABULARY);
+		MorphParser parser = new MorphParser(dictionary,
+				SegmentedLruCache.factory(MorphParser.DEFAULT_CACHE_SIZE, 0, TimeUnit.SECONDS), analyses);
+
+		parser.parse("unhappiness");
+		parser.parse("cities");
+		CacheStats word = parser.getCacheStats().get("word");
+		assertEquals(0, word.getHitCount() + word.getMissCount());
+
+		parser.parse("happiness");
+		CacheStats precomputed = parser.getCacheStats().get("precomputed");
+		assertEquals(2, precomputed.getHitCount());
+		assertEquals(1, precomputed.getMissCount());
+		assertEquals(VOCABULARY.size(), precomputed.getSize());
+		assertTrue(parser.getCacheStats().get("word").getMissCount() > 0);
+
+		assertFalse(new MorphParser(dictionary).getCacheStats().containsKey("precomputed"));
+	}
+}
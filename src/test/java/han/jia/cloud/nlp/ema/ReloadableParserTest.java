@@ -0,0 +1,92 @@
+package han.jia.cloud.nlp.ema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import han.jia.cloud.nlp.enums.ParseStage;
+import han.jia.cloud.nlp.util.Dictionary;
+import han.jia.cloud.nlp.util.TestDictionary;
+
+public class ReloadableParserTest {
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	@Test
+	public void versionGrowsByOneWithEachSwap() throws Exception {
+		ReloadableParser parser = new ReloadableParser(dictionary);
+		assertEquals(1, parser.getVersion());
+
+		assertEquals(2, (long) parser.reload(() -> dictionary).get(10, TimeUnit.SECONDS));
+		assertEquals(2, parser.getVersion());
+		assertEquals(3, parser.swap(dictionary));
+		assertEquals(3, parser.getVersion());
+		assertSame(dictionary, parser.getDictionary());
+	}
+
+	@Test
+	public void failingLoaderLeavesTheCurrentVersionInUse() throws Exception {
+		ReloadableParser parser = new ReloadableParser(dictionary);
+		MorphParser current = parser.getParser();
+
+		try {
+			parser.reload(() -> {
+				throw new IOException("gone");
+			}).get(10, TimeUnit.SECONDS);
+			fail("reloaded from a failing loader");
+		} catch (ExecutionException e) {
+			assertEquals("gone", e.getCause().getMessage());
+		}
+
+		assertEquals(1, parser.getVersion());
+		assertSame(current, parser.getParser());
+		assertEquals("((un+(hap+y))+iness)", MorphNodeFormat.BRACKETED.format(parser.parse("unhappiness")));
+	}
+
+	@Test
+	public void hotWordsWarmedIntoTheNewVersion() {
+		ReloadableParser parser = new ReloadableParser(dictionary);
+		for (int i = 0; i < 3; i++) {
+			parser.parse("unhappiness");
+			parser.parse("cities");
+		}
+
+		parser.swap(dictionary);
+		List<String> hotWords = parser.getParser().getHotWords(10);
+		assertTrue(hotWords.contains("unhappiness"));
+		assertTrue(hotWords.contains("cities"));
+
+		long hits = parser.getParser().getCacheStats().get("word").getHitCount();
+		parser.parse("cities");
+		assertEquals(hits + 1, parser.getParser().getCacheStats().get("word").getHitCount());
+	}
+
+	@Test
+	public void metricsGoOnInTheNewVersion() {
+		ReloadableParser parser = new ReloadableParser(dictionary);
+		ParserMetrics metrics = parser.getParser().enableMetrics();
+		parser.parse("unhappiness");
+
+		parser.swap(dictionary);
+		assertSame(metrics, parser.getParser().getMetrics());
+
+		// the warm-up is not counted, the parses of the new version are
+		assertEquals(1, metrics.getLatencies(ParseStage.PARSE).getCount());
+		parser.parse("newspaper");
+		assertEquals(2, metrics.getLatencies(ParseStage.PARSE).getCount());
+	}
+}
@@ -0,0 +1,66 @@
+package han.jia.cloud.nlp.enums;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+public class QuasiIrregularMatcherTest {
+
+	// the letters of the rules, in both cases, and a letter of none
+	private static final String LETTERS = "aeimnpstAETx";
+
+	private static final List<String> PREFIXES = Arrays.asList("", "x", "xx", "xxx", "xxxx", "xxxxx", "Wo", "fung");
+
+	private static List<String> tails(int maxLength) {
+		List<String> tails = new ArrayList<>();
+		tails.add("");
+		for (int from = 0; from < tails.size(); from++) {
+			String tail = tails.get(from);
+			if (tail.length() < maxLength) {
+				for (char c : LETTERS.toCharArray()) {
+					tails.add(tail + c);
+				}
+			}
+		}
+		return tails;
+	}
+
+	private static void assertMatchesLikeThePatterns(String word) {
+		long matched = QuasiIrregularMatcher.INSTANCE.match(word);
+		for (QuasiIrregular rule : QuasiIrregular.values()) {
+			Matcher matcher = rule.getPattern().matcher(word);
+			boolean expected = matcher.matches();
+
+			assertEquals(rule + " on '" + word + "'", expected, (matched & (1L << rule.ordinal())) != 0L);
+			if (expected) {
+				assertEquals(rule + " head of '" + word + "'", matcher.group(1).length(), rule.headLength(word));
+			}
+		}
+	}
+
+	@Test
+	public void sameMatchesAsThePatterns() {
+		for (String prefix : PREFIXES) {
+			for (String tail : tails(3)) {
+				assertMatchesLikeThePatterns(prefix + tail);
+			}
+		}
+	}
+
+	@Test
+	public void realWords() {
+		for (String word : new String[] { "fungi", "Fungi", "stimuli", "criteria", "data", "analyses", "algae",
+				"women", "men", "slept", "kept", "i", "a", "ta", "" }) {
+			assertMatchesLikeThePatterns(word);
+		}
+
+		assertTrue(QuasiIrregularMatcher.INSTANCE.matches("FUNGI", QuasiIrregular._i_1));
+		assertEquals(4, QuasiIrregular._i_1.headLength("fungi"));
+	}
+}
@@ -0,0 +1,72 @@
+package han.jia.cloud.nlp.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.domain.Word;
+
+public class SqlDumpWordServiceTest {
+
+	private static SqlDumpWordService serviceOf(String... wordNames) throws IOException {
+		StringBuilder dump = new StringBuilder();
+		dump.append("SET client_encoding = 'UTF8';\n\n");
+		dump.append("COPY derivative (id, name, derivatives) FROM stdin;\n1\thappy\thappiness\n\\.\n\n");
+		dump.append("COPY ending (id, cut_ways, suffix, name, type) FROM stdin;\n1\t\\N\tness\tness\t1\n\\.\n\n");
+		dump.append("COPY inflected (id, name, base, inflection) FROM stdin;\n1\tcit\\x69es\tcity\tpl\n\\.\n\n");
+		dump.append("COPY prefix (id, name) FROM stdin;\n1\tun\n\\.\n\n");
+		dump.append("COPY son_daughter (id, name, son, daughter) FROM stdin;\r\n1\tunhappy\tun\thappy\r\n\\.\r\n\n");
+		dump.append("COPY word (id, name, splittable) FROM stdin;\n");
+		for (int i = 0; i < wordNames.length; i++) {
+			dump.append(i + 1).append('\t').append(wordNames[i]).append("\tt\n");
+		}
+		dump.append("\\.\n");
+
+		Path file = Files.createTempFile("nlp", ".sql");
+		try {
+			Files.write(file, dump.toString().getBytes(StandardCharsets.UTF_8));
+			return new SqlDumpWordService(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<String> namesOf(SqlDumpWordService service) {
+		return service.findAllWords().map(Word::getName).collect(Collectors.toList());
+	}
+
+	@Test
+	public void namedEscapesAndEscapedCharacters() throws IOException {
+		assertEquals(Arrays.asList("a\tb", "a\nb\rc", "\b\f\u000B", "a\\b", "x", "plain"),
+				namesOf(serviceOf("a\\tb", "a\\nb\\rc", "\\b\\f\\v", "a\\\\b", "\\x", "plain")));
+	}
+
+	@Test
+	public void octalAndHexEscapes() throws IOException {
+		// the bytes of é and ï in UTF-8 in octal and in hex, alone and mixed
+		assertEquals(Arrays.asList("A", "A", "café", "naïve", "é-é", "\u0001\u0009", "\u00180", "xyz", "\u0000"),
+				namesOf(serviceOf("\\101", "\\x41", "caf\\303\\251", "na\\xc3\\xAFve", "\\303\\xa9-\\xc3\\251",
+						"\\1\\11", "\\0300", "\\x\\y\\z", "\\000")));
+	}
+
+	@Test
+	public void nullAndRowsOfTheOtherTables() throws IOException {
+		SqlDumpWordService service = serviceOf("happy");
+		assertNull(service.findAllEndings().findFirst().get().getCutWays());
+
+		Inflected inflected = service.findAllInflected().findFirst().get();
+		assertEquals("cities", inflected.getName());
+		assertEquals("city", inflected.getBase());
+		assertEquals("un", service.findAllLeftRights().findFirst().get().getLeft());
+	}
+}
@@ -0,0 +1,50 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DictionarySnapshotTest {
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	@Test
+	public void snapshotLooksUpAsTheDump() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DictionarySnapshot.write(dictionary, out);
+		Dictionary snapshot = DictionarySnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+
+		TestDictionary.assertLooksUpAlike(dictionary, snapshot);
+		assertEquals(dictionary.getSymbolCount(), snapshot.getSymbolCount());
+	}
+
+	@Test
+	public void savedAndLoaded() throws IOException {
+		Path file = Files.createTempFile("ema", ".dict");
+		try {
+			DictionarySnapshot.save(dictionary, file);
+			Dictionary loaded = DictionarySnapshot.load(file);
+			assertEquals(dictionary.getWords(), loaded.getWords());
+			assertEquals(dictionary.getInflectionTable().keySet(), loaded.getInflectionTable().keySet());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAnotherFile() throws IOException {
+		DictionarySnapshot.read(new ByteArrayInputStream("CREATE TABLE".getBytes("UTF-8")));
+	}
+}
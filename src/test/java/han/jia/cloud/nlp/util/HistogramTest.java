@@ -0,0 +1,79 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void emptyHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void zeroAndNegativeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(0);
+		histogram.record(-5);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(0, histogram.getPercentile(100));
+	}
+
+	/**
+	 * A power of two starts a bucket, whose upper bound is one less than the
+	 * next power of two
+	 */
+	@Test
+	public void powersOfTwo() {
+		for (int i = 0; i < Long.SIZE - 2; i++) {
+			long power = 1L << i;
+			Histogram histogram = new Histogram();
+			histogram.record(power);
+			histogram.record(power);
+			histogram.record(power << 1);
+
+			assertEquals("2^" + i, (power << 1) - 1, histogram.getPercentile(50));
+			assertEquals("2^" + i, power << 1, histogram.getPercentile(100));
+			assertEquals("2^" + i, power << 1, histogram.getMax());
+		}
+
+		Histogram histogram = new Histogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+	}
+
+	@Test
+	public void percentilesOfARange() {
+		Histogram histogram = new Histogram();
+		for (int value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMean(), 1e-9);
+		// the 50th value, 50, is in the bucket from 32 to 63
+		assertEquals(63, histogram.getPercentile(50));
+		// the 99th value, 99, is in the bucket from 64 to 127, capped by the max
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(100, histogram.getMax());
+	}
+
+	@Test
+	public void resetClearsEverything() {
+		Histogram histogram = new Histogram();
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+}
@@ -0,0 +1,49 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MappedDictionaryTest {
+
+	private static Dictionary dictionary;
+
+	@BeforeClass
+	public static void loadDictionary() throws IOException {
+		dictionary = TestDictionary.get();
+	}
+
+	@Test
+	public void imageLooksUpAsTheDump() throws IOException {
+		Path image = Files.createTempFile("ema", ".img");
+		try {
+			MappedDictionary.save(dictionary, image);
+			MappedDictionary mapped = MappedDictionary.open(image);
+
+			TestDictionary.assertLooksUpAlike(dictionary, mapped);
+			assertEquals(dictionary.getSymbolCount(), mapped.getSymbolCount());
+			// in the order of the symbol table rather than of the tables
+			assertEquals(dictionary.getWords().size(), mapped.getWords().size());
+			assertEquals(new HashSet<>(dictionary.getWords()), new HashSet<>(mapped.getWords()));
+		} finally {
+			Files.delete(image);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAnotherFile() throws IOException {
+		Path file = Files.createTempFile("ema", ".img");
+		try {
+			Files.write(file, new byte[1024]);
+			MappedDictionary.open(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
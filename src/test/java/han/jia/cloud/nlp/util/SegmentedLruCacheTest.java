@@ -0,0 +1,150 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of the eviction and recency of {@code SegmentedLruCache}. The caches
+ * hold fewer than 32 entries, which keeps them in a single partition, but for
+ * the one of the hot keys, which spreads its keys over all the partitions.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public class SegmentedLruCacheTest {
+
+	@Test
+	public void neverHoldsMoreThanItsMaximumSize() {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		for (int i = 0; i < 100; i++) {
+			cache.put("k" + i, i);
+		}
+
+		assertEquals(10, cache.size());
+		assertEquals(90, cache.stats().getEvictionCount());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedProbationaryEntry() {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		for (int i = 0; i < 10; i++) {
+			cache.put("k" + i, i);
+		}
+
+		cache.put("k10", 10);
+
+		assertNull(cache.get("k0"));
+		assertEquals(Integer.valueOf(1), cache.get("k1"));
+		assertEquals(Integer.valueOf(10), cache.get("k10"));
+	}
+
+	@Test
+	public void keepsEntriesHitAgainOverEntriesSeenOnce() {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		cache.put("hot", 0);
+		assertNotNull(cache.get("hot"));
+
+		// a scan of words seen once does not flush the promoted entry
+		for (int i = 0; i < 1000; i++) {
+			cache.put("once" + i, i);
+		}
+
+		assertEquals(Integer.valueOf(0), cache.get("hot"));
+	}
+
+	@Test
+	public void demotesTheLeastRecentlyUsedProtectedEntry() {
+		// 8 protected entries at most
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		for (int i = 0; i < 9; i++) {
+			cache.put("k" + i, i);
+			cache.get("k" + i);
+		}
+
+		// k0 went back to probation, where it is the eldest, so it goes first
+		cache.put("a", -1);
+		cache.put("b", -2);
+
+		assertNull(cache.get("k0"));
+		assertEquals(Integer.valueOf(1), cache.get("k1"));
+		assertEquals(Integer.valueOf(-2), cache.get("b"));
+	}
+
+	@Test
+	public void updatesTheValueOfAProtectedEntry() {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		cache.put("k", 1);
+		cache.get("k");
+		cache.put("k", 2);
+
+		assertEquals(Integer.valueOf(2), cache.get("k"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void expiresEntriesAfterWrite() throws InterruptedException {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10, 1, TimeUnit.MILLISECONDS);
+		cache.put("k", 1);
+		Thread.sleep(5);
+
+		assertNull(cache.get("k"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void countsHitsAndMisses() {
+		SegmentedLruCache<String, Integer> cache = new SegmentedLruCache<>(10);
+		cache.put("k", 1);
+		cache.get("k");
+		cache.get("k");
+		cache.get("missing");
+
+		CacheStats stats = cache.stats();
+		assertEquals(2, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+	}
+
+	/**
+	 * A cache of 1024 entries has at most 64 partitions, each holding the
+	 * keys of one residue of the number of partitions, so the 64 hottest keys
+	 * are the last 64 promoted however many partitions there are
+	 */
+	@Test
+	public void hotKeysTakenFromAllThePartitions() {
+		SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(1024);
+		for (int i = 0; i < 400; i++) {
+			cache.put(i, i);
+			cache.get(i);
+		}
+		for (int i = 1000; i < 1010; i++) {
+			cache.put(i, i);
+		}
+
+		Set<Integer> expected = new HashSet<>();
+		for (int i = 336; i < 400; i++) {
+			expected.add(i);
+		}
+		assertEquals(expected, new HashSet<>(cache.hotKeys(64)));
+
+		// the probationary keys come after all the protected ones
+		List<Integer> all = cache.hotKeys(Integer.MAX_VALUE);
+		assertEquals(410, all.size());
+		for (int i = 400; i < 410; i++) {
+			assertTrue(all.get(i) >= 1000);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsANonPositiveSize() {
+		new SegmentedLruCache<String, Integer>(0);
+	}
+}
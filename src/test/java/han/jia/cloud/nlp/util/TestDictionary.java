@@ -0,0 +1,85 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import han.jia.cloud.nlp.domain.Inflected;
+import han.jia.cloud.nlp.ema.MorphNode;
+import han.jia.cloud.nlp.ema.MorphParser;
+import han.jia.cloud.nlp.enums.Singleton;
+import han.jia.cloud.nlp.service.impl.SqlDumpWordService;
+
+/**
+ * The dictionary of the shipped dump file, shared by the tests. The dump is
+ * found by the system property {@code nlp.dump}, which surefire sets to the
+ * file under {@code ${basedir}}, so the tests run from any directory.
+ * 
+ * @author Jiayun Han
+ *
+ */
+public final class TestDictionary {
+
+	public static final String DUMP_PROPERTY = "nlp.dump";
+
+	private TestDictionary() {
+	}
+
+	public static Path dump() {
+		return Paths.get(System.getProperty(DUMP_PROPERTY, "dbdump/nlp.sql"));
+	}
+
+	public static Dictionary get() throws IOException {
+		return Singleton.INSTANCE.getDictionary(new SqlDumpWordService(dump()));
+	}
+
+	/**
+	 * Asserts that a copy of a dictionary, such as a snapshot or an image,
+	 * looks up the words of the original and of a few variants of them alike,
+	 * and that a parser of the copy parses every tenth of them alike
+	 */
+	public static void assertLooksUpAlike(Dictionary expected, Dictionary actual) {
+
+		Set<String> probes = new LinkedHashSet<>(expected.getWords());
+		probes.addAll(expected.getInflectionTable().keySet());
+		probes.addAll(expected.getMorphNodeMap().keySet());
+		for (String word : new ArrayList<>(probes)) {
+			probes.add(word + "s");
+			probes.add(word.toUpperCase(Locale.ROOT));
+		}
+
+		List<String> parsed = new ArrayList<>();
+		int i = 0;
+		for (String word : probes) {
+			assertEquals(word, expected.isWord(word), actual.isWord(word));
+			assertEquals(word, expected.findRoot(word), actual.findRoot(word));
+			assertEquals(word, toString(expected.findInflected(word)), toString(actual.findInflected(word)));
+			assertEquals(word, toString(expected.findMorphNode(word)), toString(actual.findMorphNode(word)));
+			if (i++ % 10 == 0) {
+				parsed.add(word);
+			}
+		}
+
+		MorphParser expectedParser = new MorphParser(expected);
+		MorphParser actualParser = new MorphParser(actual);
+		for (String word : parsed) {
+			assertEquals(word, expectedParser.parse(word).toString(), actualParser.parse(word).toString());
+		}
+	}
+
+	private static String toString(Inflected inflected) {
+		return inflected == null ? null
+				: inflected.getName() + "=" + inflected.getBase() + "+" + inflected.getInflection();
+	}
+
+	private static String toString(MorphNode node) {
+		return node == null ? null : node.toString();
+	}
+}
@@ -0,0 +1,108 @@
+package han.jia.cloud.nlp.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WordTokenizerTest {
+
+	private static List<String> words(Reader reader, int bufferSize) throws IOException {
+		WordTokenizer tokenizer = new WordTokenizer(reader, bufferSize);
+		List<String> words = new ArrayList<>();
+		while (tokenizer.next()) {
+			words.add(tokenizer.getWord() + "@" + tokenizer.getStart() + "-" + tokenizer.getEnd());
+		}
+		return words;
+	}
+
+	private static List<String> words(String text) throws IOException {
+		return words(new StringReader(text), WordTokenizer.DEFAULT_BUFFER_SIZE);
+	}
+
+	// hands the text over one char per read, to cut it at every position
+	private static Reader trickling(String text) {
+		return new StringReader(text) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				return super.read(cbuf, off, Math.min(len, 1));
+			}
+		};
+	}
+
+	@Test
+	public void emptyText() throws IOException {
+		assertFalse(new WordTokenizer(new StringReader("")).next());
+		assertEquals(Arrays.asList(), words(" 12 ... -- "));
+	}
+
+	@Test
+	public void wordsWithOffsets() throws IOException {
+		assertEquals(Arrays.asList("The@0-3", "cat@4-7", "sat@9-12"), words("The cat, sat."));
+	}
+
+	@Test
+	public void hyphenKeptOnlyBetweenLetters() throws IOException {
+		assertEquals(Arrays.asList("well-known@0-10"), words("well-known"));
+		assertEquals(Arrays.asList("end@0-3", "start@6-11"), words("end- -start"));
+		assertEquals(Arrays.asList("a@0-1", "b@3-4"), words("a--b"));
+		assertEquals(Arrays.asList("x@0-1"), words("x-"));
+	}
+
+	@Test
+	public void apostrophesAndDigitsSeparateWords() throws IOException {
+		assertEquals(Arrays.asList("don@0-3", "t@4-5", "abc@6-9", "def@11-14"), words("don't abc12def"));
+	}
+
+	@Test
+	public void lettersOutsideTheBasicPlane() throws IOException {
+		// U+1D49C MATHEMATICAL SCRIPT CAPITAL A, a letter
+		String a = new String(Character.toChars(0x1D49C));
+		assertEquals(Arrays.asList("x" + a + "y@0-4", a + "@5-7", "b-" + a + "@8-12"),
+				words("x" + a + "y " + a + " b-" + a));
+
+		// U+1F600 GRINNING FACE, not a letter
+		String face = new String(Character.toChars(0x1F600));
+		assertEquals(Arrays.asList("x@0-1", "y@3-4"), words("x" + face + "y"));
+	}
+
+	@Test
+	public void loneSurrogatesSeparateWords() throws IOException {
+		assertEquals(Arrays.asList("x@0-1", "y@2-3"), words("x\uD835y"));
+		assertEquals(Arrays.asList("x@0-1"), words("x\uD835"));
+		assertEquals(Arrays.asList("x@0-1", "y@2-3"), words("x\uDC9Cy"));
+	}
+
+	@Test
+	public void textCutAtEveryChar() throws IOException {
+		String a = new String(Character.toChars(0x1D49C));
+		String text = "well-known " + a + "b-" + a + " don't-";
+		assertEquals(words(text), words(trickling(text), 16));
+	}
+
+	@Test
+	public void wordsLongerThanTheBufferAreSkipped() throws IOException {
+		assertEquals(Arrays.asList("abcd@0-4", "ab@16-18"), words(new StringReader("abcd abcdefghij ab"), 4));
+		assertEquals(Arrays.asList("abcd@0-4", "ab@16-18"), words(trickling("abcd abcdefghij ab"), 4));
+		assertEquals(Arrays.asList("ab@7-9"), words(trickling("ab-cde ab"), 4));
+	}
+
+	@Test
+	public void surrogatePairAtTheEndOfTheBuffer() throws IOException {
+		String a = new String(Character.toChars(0x1D49C));
+		assertEquals(Arrays.asList("abc" + a + "@0-5"), words(trickling("abc" + a), 5));
+		assertEquals(Arrays.asList("x@7-8"), words(trickling("abcd" + a + " x"), 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bufferSizeMustBePositive() {
+		new WordTokenizer(new StringReader("x"), 0);
+	}
+}